@@ -0,0 +1,57 @@
+package dsa.personal.notespsqlv04;
+
+/**
+ * Outcome of a single item in a bulk notes request.
+ * index is the position of the item in the request body.
+ */
+public class BulkNoteResult {
+
+    public enum Status {
+        CREATED, UPDATED, NOT_FOUND, CONFLICT, INVALID
+    }
+
+    private int index;
+    private Long id;
+    private Status status;
+    private String message;
+
+    public BulkNoteResult() {
+    }
+
+    public BulkNoteResult(int index, Long id, Status status, String message) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.message = message;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    public Long getId() {
+        return id;
+    }
+    public void setId(Long id) {
+        this.id = id;
+    }
+    public Status getStatus() {
+        return status;
+    }
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+    public String getMessage() {
+        return message;
+    }
+    public void setMessage(String message) {
+        this.message = message;
+    }
+    @Override
+    public String toString() {
+        return "BulkNoteResult [index=" + index + ", id=" + id + ", status=" + status + ", message=" + message + "]";
+    }
+
+}
@@ -9,11 +9,25 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 public class GlobalExceptionHandler {
     @ExceptionHandler
     public ResponseEntity<ErrorResponse> defaultExceptionHandler(Exception ex) {
+        return errorResponse(ex, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> noteNotFoundHandler(NoteNotFoundException ex) {
+        return errorResponse(ex, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ErrorResponse> versionConflictHandler(NoteVersionConflictException ex) {
+        return errorResponse(ex, HttpStatus.CONFLICT);
+    }
+
+    private ResponseEntity<ErrorResponse> errorResponse(Exception ex, HttpStatus status) {
         ErrorResponse error = new ErrorResponse();
-        error.setStatusCode(HttpStatus.BAD_REQUEST.value());
+        error.setStatusCode(status.value());
         error.setErrorHash(ex.hashCode());
         error.setMessage(ex.getMessage());
         error.setTimestamp(System.currentTimeMillis());
-        return new ResponseEntity<ErrorResponse>(error, null, HttpStatus.BAD_REQUEST);
+        return new ResponseEntity<ErrorResponse>(error, null, status);
     }
 }
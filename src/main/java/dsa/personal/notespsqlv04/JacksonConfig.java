@@ -0,0 +1,25 @@
+package dsa.personal.notespsqlv04;
+
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+/**
+ * Jackson configuration for the application ObjectMapper.
+ */
+@Configuration
+public class JacksonConfig {
+
+    /**
+     * Notes carries a @JsonFilter for sparse fieldsets; serialize every field unless
+     * a response supplies its own filter (see NotesService.fieldsFilter)
+     */
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer notesFieldsFilterCustomizer() {
+        return builder -> builder.filters(new SimpleFilterProvider()
+                .setDefaultFilter(SimpleBeanPropertyFilter.serializeAll()));
+    }
+}
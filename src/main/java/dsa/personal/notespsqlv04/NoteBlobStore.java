@@ -0,0 +1,296 @@
+package dsa.personal.notespsqlv04;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Content-addressed store for note bodies too large to keep inline, in a directory on disk.
+ * A body is stored once under its SHA-256 (ab/cd/abcd...), written to a temp file and moved
+ * into place, so readers never see a partial file and identical bodies share one file.
+ * Files no longer referenced by any note or revision snapshot are removed by an off-peak sweep.
+ * Every node must use the same directory (a shared mount when there are several nodes):
+ * the directory holds a store id that is registered in the database on first start, and a node
+ * whose notes.blobs.path holds another store (or none, while one is registered) refuses to start.
+ * Runs before the other startup runners (order 0).
+ */
+@Component
+@Order(0)
+public class NoteBlobStore implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(NoteBlobStore.class);
+
+    private static final Pattern REF = Pattern.compile("[0-9a-f]{64}");
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String STORE_ID_FILE = "store-id";
+
+    @Autowired
+    private NotesRepository notesRepository;
+
+    @Autowired
+    private NoteRevisionRepository noteRevisionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${notes.blobs.path:data/note-blobs}")
+    private String rootPath;
+
+    @Value("${notes.blobs.inline-max-bytes:65536}")
+    private int inlineMaxBytes;
+
+    @Value("${notes.blobs.sweep-grace:1h}")
+    private Duration sweepGrace;
+
+    @Value("${notes.blobs.search-max-chars:131072}")
+    private int searchMaxChars;
+
+    private Path root;
+
+    /**
+     * Writes a body to the store as a stream
+     */
+    public interface BodyWriter {
+
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(rootPath);
+        Files.createDirectories(root);
+    }
+
+    /**
+     * Check that notes.blobs.path is the store this database refers to, registering it if
+     * the database has none yet
+     */
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        String storeId = storeId();
+        jdbcTemplate.update("INSERT INTO note_blob_store (store_id) VALUES (?) ON CONFLICT DO NOTHING", storeId);
+        String registered = jdbcTemplate.queryForObject("SELECT store_id FROM note_blob_store", String.class);
+        if (!storeId.equals(registered)) {
+            throw new IllegalStateException("notes.blobs.path " + root.toAbsolutePath() + " holds blob store "
+                    + storeId + " but the database uses blob store " + registered
+                    + "; every node must share the same notes.blobs.path directory");
+        }
+        logger.info("Using note blob store {} at {}", storeId, root.toAbsolutePath());
+    }
+
+    private String storeId() throws IOException {
+        Path file = root.resolve(STORE_ID_FILE);
+        if (!Files.exists(file)) {
+            Path temp = Files.createTempFile(root, STORE_ID_FILE, TEMP_SUFFIX);
+            try {
+                Files.writeString(temp, UUID.randomUUID().toString());
+                // a link, unlike a move, fails if the file exists: the first node to create the id wins
+                Files.createLink(file, temp);
+            } catch (FileAlreadyExistsException e) {
+                // created by another node meanwhile
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        return Files.readString(file).trim();
+    }
+
+    /**
+     * Largest body, in UTF-8 bytes, that is kept in the notes table
+     */
+    public int getInlineMaxBytes() {
+        return inlineMaxBytes;
+    }
+
+    /**
+     * Part of a body stored outside the notes table that is indexed for full-text search (see
+     * NotesRepository.updateBodyVectors): its first notes.blobs.search-max-chars characters
+     * (a tsvector holds at most 1MB), never ending inside a surrogate pair
+     */
+    public String searchText(String body) {
+        if (body.length() <= searchMaxChars) {
+            return body;
+        }
+        int end = Character.isHighSurrogate(body.charAt(searchMaxChars - 1)) ? searchMaxChars - 1 : searchMaxChars;
+        return body.substring(0, end);
+    }
+
+    /**
+     * searchText of a stored body, reading only that much of the file
+     */
+    public String readSearchText(String ref) throws IOException {
+        char[] buffer = new char[searchMaxChars + 1];
+        int length = 0;
+        try (Reader reader = Files.newBufferedReader(path(ref), StandardCharsets.UTF_8)) {
+            int read;
+            while (length < buffer.length && (read = reader.read(buffer, length, buffer.length - length)) >= 0) {
+                length += read;
+            }
+        }
+        return searchText(new String(buffer, 0, length));
+    }
+
+    /**
+     * Store a body and return its reference
+     */
+    public String put(byte[] content) {
+        String ref = contentHash(content);
+        Path path = path(ref);
+        try {
+            if (Files.exists(path)) {
+                // a fresh reference: keep the sweep away from it
+                Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+                return ref;
+            }
+            Files.createDirectories(path.getParent());
+            Path temp = Files.createTempFile(path.getParent(), ref, TEMP_SUFFIX);
+            Files.write(temp, content);
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            return ref;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store note body " + ref, e);
+        }
+    }
+
+    /**
+     * Store a body produced as a stream, hashing it as it is written so it is never held in memory,
+     * and return its reference
+     */
+    public String put(BodyWriter writer) throws IOException {
+        Path temp = Files.createTempFile(root, "body", TEMP_SUFFIX);
+        try {
+            MessageDigest digest = sha256();
+            try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), digest)) {
+                writer.writeTo(out);
+            }
+            String ref = HexFormat.of().formatHex(digest.digest());
+            Path path = path(ref);
+            if (Files.exists(path)) {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            } else {
+                Files.createDirectories(path.getParent());
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return ref;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Mark a body as freshly referenced, so the sweep leaves it alone for another notes.blobs.sweep-grace;
+     * false if it is no longer stored
+     */
+    public boolean touch(String ref) {
+        try {
+            Files.setLastModifiedTime(path(ref), FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to touch note body " + ref, e);
+        }
+    }
+
+    public long size(String ref) throws IOException {
+        return Files.size(path(ref));
+    }
+
+    /**
+     * File holding the body with the given reference
+     */
+    public Path path(String ref) {
+        if (ref == null || !REF.matcher(ref).matches()) {
+            throw new IllegalArgumentException("Invalid body reference: " + ref);
+        }
+        return root.resolve(ref.substring(0, 2)).resolve(ref.substring(2, 4)).resolve(ref);
+    }
+
+    /**
+     * Delete bodies no note refers to any more, and temp files left by failed writes.
+     * Only files untouched for notes.blobs.sweep-grace are considered, both before and after their
+     * references are checked, so bodies stored or re-referenced (touched) by transactions that have
+     * not committed yet are left alone.
+     */
+    @Scheduled(cron = "${notes.purge.cron:0 */15 1-5 * * *}")
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - sweepGrace.toMillis();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        } catch (IOException e) {
+            logger.warn("Failed to list note blob store", e);
+            return;
+        }
+
+        long deleted = 0;
+        for (Path file : files) {
+            try {
+                if (Files.getLastModifiedTime(file).toMillis() >= cutoff) {
+                    continue;
+                }
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)
+                        || (REF.matcher(name).matches()
+                                && !notesRepository.existsByBodyRef(name) && !noteRevisionRepository.existsByBodyRef(name)
+                                // touched by a writer while the references were checked: its note may not have committed yet
+                                && Files.getLastModifiedTime(file).toMillis() < cutoff)) {
+                    Files.deleteIfExists(file);
+                    deleted++;
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to sweep note blob {}", file, e);
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Removed {} unreferenced note blobs", deleted);
+        }
+    }
+
+    /**
+     * Hex SHA-256 of a body, the key under which both this store and NoteBodyStore deduplicate it
+     */
+    static String contentHash(byte[] content) {
+        return HexFormat.of().formatHex(sha256().digest(content));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package dsa.personal.notespsqlv04;
+
+/**
+ * Projection of where a note's body lives: inline in the note column, in the blob store
+ * under bodyRef, or compressed in note_bodies under bodyHash.
+ */
+public interface NoteBody {
+
+    Long getId();
+
+    String getNote();
+
+    String getBodyRef();
+
+    String getBodyHash();
+
+    int getVersion();
+}
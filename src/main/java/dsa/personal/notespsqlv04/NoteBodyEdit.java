@@ -0,0 +1,45 @@
+package dsa.personal.notespsqlv04;
+
+/**
+ * One splice of a body edit: replace "delete" characters at "offset" with "insert".
+ * Offsets and counts are in UTF-16 code units (JavaScript string indexes) of the base version.
+ */
+public class NoteBodyEdit {
+    private Long offset;
+    private long delete;
+    private String insert;
+
+    public NoteBodyEdit() {
+    }
+
+    public NoteBodyEdit(Long offset, long delete, String insert) {
+        this.offset = offset;
+        this.delete = delete;
+        this.insert = insert;
+    }
+
+    public Long getOffset() {
+        return offset;
+    }
+    public void setOffset(Long offset) {
+        this.offset = offset;
+    }
+    public long getDelete() {
+        return delete;
+    }
+    public void setDelete(long delete) {
+        this.delete = delete;
+    }
+    public String getInsert() {
+        return insert;
+    }
+    public void setInsert(String insert) {
+        this.insert = insert;
+    }
+    @Override
+    public String toString() {
+        return "NoteBodyEdit [offset=" + offset + ", delete=" + delete + ", insert="
+                + (insert == null ? 0 : insert.length()) + " chars]";
+    }
+
+}
@@ -0,0 +1,153 @@
+package dsa.personal.notespsqlv04;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Splice lists (see NoteBodyEdit): validation, application as a stream, and the delta between two bodies.
+ */
+final class NoteBodyEdits {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private NoteBodyEdits() {
+    }
+
+    /**
+     * Check that edits are ordered by offset, do not overlap and insert well-formed UTF-16.
+     * Whether an offset splits a surrogate pair of the body is checked as the edits are applied.
+     */
+    static void validate(List<NoteBodyEdit> edits) {
+        long end = 0;
+        for (NoteBodyEdit edit : edits) {
+            if (edit == null || edit.getOffset() == null) {
+                throw new IllegalArgumentException("Every edit needs an offset");
+            }
+            if (edit.getDelete() < 0) {
+                throw new IllegalArgumentException("Edit delete count must not be negative");
+            }
+            if (edit.getOffset() < end) {
+                throw new IllegalArgumentException("Edits must be ordered by offset and must not overlap");
+            }
+            if (edit.getInsert() != null && hasUnpairedSurrogate(edit.getInsert())) {
+                throw new IllegalArgumentException("Edit insert contains an unpaired surrogate");
+            }
+            end = edit.getOffset() + edit.getDelete();
+        }
+    }
+
+    /**
+     * Copy source to target with the (validated) edits applied.
+     * Rejects an edit that starts or ends between the two halves of a surrogate pair.
+     */
+    static void apply(Reader body, Writer target, List<NoteBodyEdit> edits) throws IOException {
+        PushbackReader source = new PushbackReader(body, 1);
+        char[] buffer = new char[BUFFER_SIZE];
+        long position = 0;
+        // last char read from the source, -1 before the first
+        int last = -1;
+        for (NoteBodyEdit edit : edits) {
+            last = copy(source, target, edit.getOffset() - position, buffer, last);
+            checkBoundary(source, last, edit.getOffset());
+            if (edit.getDelete() > 0) {
+                last = copy(source, null, edit.getDelete(), buffer, last);
+                checkBoundary(source, last, edit.getOffset() + edit.getDelete());
+            }
+            position = edit.getOffset() + edit.getDelete();
+            if (edit.getInsert() != null) {
+                target.write(edit.getInsert());
+            }
+        }
+        source.transferTo(target);
+    }
+
+    static String apply(String source, List<NoteBodyEdit> edits) {
+        StringWriter target = new StringWriter();
+        try {
+            apply(new StringReader(source != null ? source : ""), target, edits);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return target.toString();
+    }
+
+    /**
+     * The edit turning one body into another: a single splice between their common prefix and suffix,
+     * which is what an editor save usually changes. Never splits a surrogate pair.
+     */
+    static List<NoteBodyEdit> between(String from, String to) {
+        from = from != null ? from : "";
+        to = to != null ? to : "";
+        int max = Math.min(from.length(), to.length());
+        int prefix = 0;
+        while (prefix < max && from.charAt(prefix) == to.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix > 0 && Character.isHighSurrogate(from.charAt(prefix - 1))) {
+            prefix--;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && from.charAt(from.length() - 1 - suffix) == to.charAt(to.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(from.charAt(from.length() - suffix))) {
+            suffix--;
+        }
+        if (prefix == from.length() && prefix == to.length()) {
+            return List.of();
+        }
+        String insert = to.substring(prefix, to.length() - suffix);
+        return List.of(new NoteBodyEdit((long) prefix, from.length() - prefix - suffix,
+                insert.isEmpty() ? null : insert));
+    }
+
+    /**
+     * Copy (or skip, without a target) count chars and return the last one read
+     */
+    private static int copy(Reader source, Writer target, long count, char[] buffer, int last) throws IOException {
+        while (count > 0) {
+            int read = source.read(buffer, 0, (int) Math.min(buffer.length, count));
+            if (read < 0) {
+                throw new IllegalArgumentException("Edit extends past the end of the body");
+            }
+            if (target != null) {
+                target.write(buffer, 0, read);
+            }
+            count -= read;
+            last = buffer[read - 1];
+        }
+        return last;
+    }
+
+    private static void checkBoundary(PushbackReader source, int last, long offset) throws IOException {
+        if (last < 0 || !Character.isHighSurrogate((char) last)) {
+            return;
+        }
+        int next = source.read();
+        if (next >= 0) {
+            source.unread(next);
+            if (Character.isLowSurrogate((char) next)) {
+                throw new IllegalArgumentException("Edit offset " + offset + " splits a surrogate pair");
+            }
+        }
+    }
+
+    private static boolean hasUnpairedSurrogate(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
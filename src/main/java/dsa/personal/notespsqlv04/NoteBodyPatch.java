@@ -0,0 +1,38 @@
+package dsa.personal.notespsqlv04;
+
+import java.util.List;
+
+/**
+ * Delta update of a note body: edits against the body of the given version, ordered by offset
+ * and not overlapping. The version may be given by If-Match instead.
+ */
+public class NoteBodyPatch {
+    private Integer version;
+    private List<NoteBodyEdit> edits;
+
+    public NoteBodyPatch() {
+    }
+
+    public NoteBodyPatch(Integer version, List<NoteBodyEdit> edits) {
+        this.version = version;
+        this.edits = edits;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+    public List<NoteBodyEdit> getEdits() {
+        return edits;
+    }
+    public void setEdits(List<NoteBodyEdit> edits) {
+        this.edits = edits;
+    }
+    @Override
+    public String toString() {
+        return "NoteBodyPatch [version=" + version + ", edits=" + (edits == null ? 0 : edits.size()) + "]";
+    }
+
+}
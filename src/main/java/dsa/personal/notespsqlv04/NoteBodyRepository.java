@@ -0,0 +1,57 @@
+package dsa.personal.notespsqlv04;
+
+import java.sql.Timestamp;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface NoteBodyRepository extends CrudRepository<StoredNoteBody, String> {
+
+    /**
+     * Lock a stored body until the caller's transaction ends, so deleteUnreferenced skips it
+     * while the note that is about to refer to it has not committed yet. Empty if there is no such body
+     * (including one the purger deleted while this waited for its lock).
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Query(value = "SELECT hash FROM note_bodies WHERE hash = :hash FOR SHARE", nativeQuery = true)
+    Optional<String> lockExisting(@Param("hash") String hash);
+
+    /**
+     * Store a body unless one with the same hash exists already (the dedup step)
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO note_bodies (hash, codec, raw_size, content, created_at)
+            VALUES (:hash, :codec, :rawSize, :content, now())
+            ON CONFLICT (hash) DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(@Param("hash") String hash,
+                       @Param("codec") String codec,
+                       @Param("rawSize") int rawSize,
+                       @Param("content") byte[] content);
+
+    /**
+     * Delete up to "limit" bodies created before "before" that no note or revision refers to any more.
+     * The age limit protects bodies stored for note writes that have not happened yet;
+     * bodies referenced by a concurrent, uncommitted note write are locked and skipped.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            DELETE FROM note_bodies WHERE hash IN (
+                SELECT b.hash FROM note_bodies b
+                WHERE b.created_at < :before
+                  AND NOT EXISTS (SELECT 1 FROM notes n WHERE n.body_hash = b.hash)
+                  AND NOT EXISTS (SELECT 1 FROM note_revisions r WHERE r.body_hash = b.hash)
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            """, nativeQuery = true)
+    int deleteUnreferenced(@Param("before") Timestamp before, @Param("limit") int limit);
+}
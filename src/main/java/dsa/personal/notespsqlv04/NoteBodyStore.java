@@ -0,0 +1,91 @@
+package dsa.personal.notespsqlv04;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Optional compressed storage for inline-sized note bodies (notes.bodies.compressed).
+ * Bodies are LZ4-compressed and stored once per distinct content in note_bodies, keyed by
+ * SHA-256; notes only carry the hash. Bodies are loaded separately from their notes, in one
+ * query per page, and only when a response actually includes them.
+ * Notes written before the mode was enabled keep their inline bodies; both kinds are read alike.
+ * Compressed bodies stay searchable through notes.body_vector, computed from the plain text on write.
+ */
+@Component
+public class NoteBodyStore {
+
+    private static final String CODEC_LZ4 = "lz4";
+
+    @Autowired
+    private NoteBodyRepository noteBodyRepository;
+
+    @Value("${notes.bodies.compressed:false}")
+    private boolean enabled;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Store a body (unless an identical one is stored already) and return its hash.
+     * Must run in the transaction that writes the note: an existing body is locked until then,
+     * so the purger cannot delete it between this check and the note referring to it.
+     * A body inserted here, or by a concurrent writer just before, is too new to be purged.
+     */
+    public String store(byte[] body) {
+        String hash = NoteBlobStore.contentHash(body);
+        if (noteBodyRepository.lockExisting(hash).isEmpty()) {
+            noteBodyRepository.insertIfAbsent(hash, CODEC_LZ4, body.length, compressor.compress(body));
+        }
+        return hash;
+    }
+
+    public String load(String hash) {
+        return noteBodyRepository.findById(hash)
+                .map(this::decompress)
+                .orElseThrow(() -> new IllegalStateException("Missing note body " + hash));
+    }
+
+    /**
+     * Fill in the bodies of notes stored in compressed form, with one query for all of them
+     */
+    public void loadBodies(Collection<Notes> notes) {
+        Set<String> hashes = notes.stream()
+                .map(Notes::getBodyHash)
+                .filter(hash -> hash != null)
+                .collect(Collectors.toSet());
+        if (hashes.isEmpty()) {
+            return;
+        }
+        Map<String, String> bodies = new HashMap<>();
+        noteBodyRepository.findAllById(hashes).forEach(body -> bodies.put(body.getHash(), decompress(body)));
+        for (Notes note : notes) {
+            if (note.getBodyHash() != null) {
+                note.setLoadedBody(bodies.get(note.getBodyHash()));
+            }
+        }
+    }
+
+    private String decompress(StoredNoteBody body) {
+        if (!CODEC_LZ4.equals(body.getCodec())) {
+            throw new IllegalStateException("Unsupported note body codec: " + body.getCodec());
+        }
+        byte[] raw = decompressor.decompress(body.getContent(), body.getRawSize());
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+}
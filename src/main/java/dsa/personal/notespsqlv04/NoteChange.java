@@ -0,0 +1,23 @@
+package dsa.personal.notespsqlv04;
+
+import java.sql.Timestamp;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Projection for one entry of the notes change feed: a note that was created/updated, or deleted.
+ */
+public interface NoteChange {
+
+    Long getId();
+
+    /**
+     * Id of the transaction that made the change; with the note id, the change's NoteChangeCursor
+     */
+    @JsonIgnore
+    Long getChangeXid();
+
+    Timestamp getChangedAt();
+
+    Boolean getDeleted();
+}
@@ -0,0 +1,72 @@
+package dsa.personal.notespsqlv04;
+
+/**
+ * Position in the notes change feed: the id of the transaction that made a change and the note id,
+ * formatted as "<xid>:<id>". Transaction ids are assigned by the database and the feed only hands out
+ * positions of finished transactions (see NotesRepository.findChanges), so later commits always sort after.
+ */
+public final class NoteChangeCursor implements Comparable<NoteChangeCursor> {
+
+    public static final NoteChangeCursor START = new NoteChangeCursor(0, 0);
+
+    private final long xid;
+    private final long id;
+
+    public NoteChangeCursor(long xid, long id) {
+        this.xid = xid;
+        this.id = id;
+    }
+
+    public static NoteChangeCursor of(NoteChange change) {
+        return new NoteChangeCursor(change.getChangeXid(), change.getId());
+    }
+
+    /**
+     * Parse a cursor produced by toString
+     */
+    public static NoteChangeCursor parse(String cursor) {
+        try {
+            int separator = cursor.indexOf(':');
+            long xid = Long.parseLong(cursor.substring(0, separator));
+            long id = Long.parseLong(cursor.substring(separator + 1));
+            if (xid < 0 || id < 0) {
+                throw new NumberFormatException();
+            }
+            return new NoteChangeCursor(xid, id);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid changes cursor: " + cursor);
+        }
+    }
+
+    public long getXid() {
+        return xid;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public int compareTo(NoteChangeCursor other) {
+        int byXid = Long.compare(xid, other.xid);
+        return byXid != 0 ? byXid : Long.compare(id, other.id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NoteChangeCursor)) return false;
+        NoteChangeCursor that = (NoteChangeCursor) o;
+        return xid == that.xid && id == that.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(xid) * 31 + Long.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return xid + ":" + id;
+    }
+}
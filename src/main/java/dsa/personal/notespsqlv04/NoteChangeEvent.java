@@ -0,0 +1,39 @@
+package dsa.personal.notespsqlv04;
+
+/**
+ * One event of the SSE change stream. The cursor doubles as the SSE event id,
+ * so a reconnecting client resumes through the delta-sync change feed.
+ */
+public class NoteChangeEvent {
+    private final Long id;
+    private final boolean deleted;
+    private final NoteChangeCursor position;
+
+    public NoteChangeEvent(Long id, boolean deleted, NoteChangeCursor position) {
+        this.id = id;
+        this.deleted = deleted;
+        this.position = position;
+    }
+
+    public static NoteChangeEvent of(NoteChange change) {
+        return new NoteChangeEvent(change.getId(), change.getDeleted(), NoteChangeCursor.of(change));
+    }
+
+    public Long getId() {
+        return id;
+    }
+    public boolean isDeleted() {
+        return deleted;
+    }
+    public String getCursor() {
+        return position.toString();
+    }
+    NoteChangeCursor position() {
+        return position;
+    }
+    @Override
+    public String toString() {
+        return "NoteChangeEvent [id=" + id + ", deleted=" + deleted + ", cursor=" + position + "]";
+    }
+
+}
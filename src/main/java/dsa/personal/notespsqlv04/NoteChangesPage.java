@@ -0,0 +1,46 @@
+package dsa.personal.notespsqlv04;
+
+import java.util.List;
+
+/**
+ * One batch of the notes change feed, oldest change first.
+ * nextCursor is always set: pass it as "since" on the next call, even when hasMore is false.
+ */
+public class NoteChangesPage {
+    private List<NoteChange> changes;
+    private String nextCursor;
+    private boolean hasMore;
+
+    public NoteChangesPage() {
+    }
+
+    public NoteChangesPage(List<NoteChange> changes, String nextCursor, boolean hasMore) {
+        this.changes = changes;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<NoteChange> getChanges() {
+        return changes;
+    }
+    public void setChanges(List<NoteChange> changes) {
+        this.changes = changes;
+    }
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    public boolean isHasMore() {
+        return hasMore;
+    }
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+    @Override
+    public String toString() {
+        return "NoteChangesPage [changes=" + changes.size() + ", nextCursor=" + nextCursor + ", hasMore=" + hasMore + "]";
+    }
+
+}
@@ -0,0 +1,39 @@
+package dsa.personal.notespsqlv04;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serialized JSON body of a single note together with the version it was rendered from.
+ * The body is a read-only view: of the off-heap cache entry when served from NotesResponseCache,
+ * so it can be written to the response without being copied onto the heap.
+ */
+public class NoteJson {
+    private final Long id;
+    private final int version;
+    private final ByteBuffer body;
+
+    public NoteJson(Long id, int version, ByteBuffer body) {
+        this.id = id;
+        this.version = version;
+        this.body = body;
+    }
+
+    public NoteJson(Long id, int version, byte[] body) {
+        this(id, version, ByteBuffer.wrap(body).asReadOnlyBuffer());
+    }
+
+    public Long getId() {
+        return id;
+    }
+    public int getVersion() {
+        return version;
+    }
+    public ByteBuffer getBody() {
+        return body;
+    }
+    @Override
+    public String toString() {
+        return "NoteJson [id=" + id + ", version=" + version + ", bytes=" + body.remaining() + "]";
+    }
+
+}
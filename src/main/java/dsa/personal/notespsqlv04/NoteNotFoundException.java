@@ -0,0 +1,11 @@
+package dsa.personal.notespsqlv04;
+
+/**
+ * Thrown when a write targets a note that does not exist.
+ */
+public class NoteNotFoundException extends RuntimeException {
+
+    public NoteNotFoundException(Long id) {
+        super("Note not found: " + id);
+    }
+}
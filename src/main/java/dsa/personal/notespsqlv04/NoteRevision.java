@@ -0,0 +1,61 @@
+package dsa.personal.notespsqlv04;
+
+import java.sql.Timestamp;
+
+/**
+ * A past version of a note, reconstructed from its revision history.
+ */
+public class NoteRevision {
+    private Long id;
+    private int version;
+    private String title;
+    private String note;
+    private Timestamp createdAt;
+
+    public NoteRevision() {
+    }
+
+    public NoteRevision(Long id, int version, String title, String note, Timestamp createdAt) {
+        this.id = id;
+        this.version = version;
+        this.title = title;
+        this.note = note;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+    public void setId(Long id) {
+        this.id = id;
+    }
+    public int getVersion() {
+        return version;
+    }
+    public void setVersion(int version) {
+        this.version = version;
+    }
+    public String getTitle() {
+        return title;
+    }
+    public void setTitle(String title) {
+        this.title = title;
+    }
+    public String getNote() {
+        return note;
+    }
+    public void setNote(String note) {
+        this.note = note;
+    }
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+    public void setCreatedAt(Timestamp createdAt) {
+        this.createdAt = createdAt;
+    }
+    @Override
+    public String toString() {
+        return "NoteRevision [id=" + id + ", version=" + version + ", title=" + title + ", createdAt=" + createdAt + "]";
+    }
+
+}
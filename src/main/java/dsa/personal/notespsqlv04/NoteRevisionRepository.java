@@ -0,0 +1,60 @@
+package dsa.personal.notespsqlv04;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface NoteRevisionRepository extends CrudRepository<StoredNoteRevision, StoredNoteRevision.Key> {
+
+    /**
+     * Record the current versions of notes, ids[i] with edits[i] (JSON) as the delta against its
+     * previous version. A snapshot, copied from the note's row (for offloaded and compressed bodies
+     * only the reference), is recorded instead where edits[i] is null, where the version is a multiple
+     * of snapshotInterval, and where the previous version is not recorded.
+     */
+    @Modifying(flushAutomatically = true)
+    @Transactional
+    @Query(value = """
+            INSERT INTO note_revisions (note_id, version, title, created_at, edits, note, body_ref, body_hash, body_size)
+            SELECT n.id, n.version, n.title, now(),
+                CASE WHEN s.snapshot THEN NULL ELSE r.edits END,
+                CASE WHEN s.snapshot THEN n.note END,
+                CASE WHEN s.snapshot THEN n.body_ref END,
+                CASE WHEN s.snapshot THEN n.body_hash END,
+                CASE WHEN s.snapshot THEN n.body_size END
+            FROM unnest(CAST(:ids AS bigint[]), CAST(:edits AS text[])) AS r (id, edits)
+            JOIN notes n ON n.id = r.id
+            CROSS JOIN LATERAL (
+                SELECT r.edits IS NULL
+                    OR n.version % :snapshotInterval = 0
+                    OR NOT EXISTS (SELECT 1 FROM note_revisions p WHERE p.note_id = n.id AND p.version = n.version - 1)
+                    AS snapshot
+            ) s
+            ON CONFLICT DO NOTHING
+            """, nativeQuery = true)
+    int insertRevisions(@Param("ids") Long[] ids, @Param("edits") String[] edits,
+                        @Param("snapshotInterval") int snapshotInterval);
+
+    /**
+     * Latest snapshot at or before a version: where reconstructing that version starts
+     */
+    @Query(value = """
+            SELECT * FROM note_revisions
+            WHERE note_id = :noteId AND version <= :version AND edits IS NULL
+            ORDER BY version DESC
+            LIMIT 1
+            """, nativeQuery = true)
+    Optional<StoredNoteRevision> findSnapshot(@Param("noteId") Long noteId, @Param("version") int version);
+
+    List<StoredNoteRevision> findByNoteIdAndVersionBetweenOrderByVersionAsc(Long noteId, int from, int to);
+
+    List<NoteRevisionSummary> findByNoteIdAndVersionLessThanOrderByVersionDesc(Long noteId, int version, Pageable pageable);
+
+    boolean existsByBodyRef(String bodyRef);
+}
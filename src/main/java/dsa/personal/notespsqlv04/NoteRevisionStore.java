@@ -0,0 +1,243 @@
+package dsa.personal.notespsqlv04;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Append-only revision history of notes, in note_revisions.
+ * Each new version is recorded as the edits against the previous one (see NoteBodyEdit), so a small
+ * change to a large note costs a small row. Every notes.revisions.snapshot-interval versions, and
+ * whenever the previous version is not recorded or the delta would not be smaller than the body,
+ * the full body is recorded instead; reconstructing a version therefore starts from the nearest
+ * snapshot and replays fewer than snapshot-interval deltas. Snapshots of offloaded or compressed
+ * bodies only copy the reference, and keep the referenced body from being swept; a change to or
+ * from an offloaded body is always recorded as a snapshot, so the blobs are never read here.
+ * Revisions are written with one INSERT per Batch (a bulk request records a chunk at a time),
+ * after the new versions have been flushed; the snapshot decision is taken by that INSERT.
+ * History starts with the first version written after this store was introduced.
+ */
+@Component
+public class NoteRevisionStore {
+
+    private static final TypeReference<List<NoteBodyEdit>> EDITS = new TypeReference<>() {
+    };
+
+    @Autowired
+    private NoteRevisionRepository noteRevisionRepository;
+
+    @Autowired
+    private NoteBlobStore noteBlobStore;
+
+    @Autowired
+    private NoteBodyStore noteBodyStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${notes.revisions.snapshot-interval:20}")
+    private int snapshotInterval;
+
+    /**
+     * Where a body is stored, as read from a note before it is overwritten
+     */
+    public static final class Body {
+        private final String note;
+        private final String bodyRef;
+        private final String bodyHash;
+
+        private Body(String note, String bodyRef, String bodyHash) {
+            this.note = note;
+            this.bodyRef = bodyRef;
+            this.bodyHash = bodyHash;
+        }
+
+        public static Body of(NoteBody body) {
+            return new Body(body.getNote(), body.getBodyRef(), body.getBodyHash());
+        }
+
+        public static Body of(Notes note) {
+            return new Body(note.getNote(), note.getBodyRef(), note.getBodyHash());
+        }
+
+        boolean sameAs(Body other) {
+            return Objects.equals(note, other.note) && Objects.equals(bodyRef, other.bodyRef)
+                    && Objects.equals(bodyHash, other.bodyHash);
+        }
+    }
+
+    /**
+     * The current versions of some notes, to be recorded together. A note listed twice is recorded
+     * as a snapshot, since its previous recorded version is not what the second delta was taken against.
+     */
+    public final class Batch {
+        // note id -> edits as JSON, null for a snapshot
+        private final Map<Long, String> revisions = new LinkedHashMap<>();
+
+        private Batch() {
+        }
+
+        /**
+         * The first version of a new note
+         */
+        public void created(Long id) {
+            add(id, null);
+        }
+
+        /**
+         * A version whose body (if changed) was replaced as a whole; the delta is computed here
+         */
+        public void replaced(Long id, Body previous, Body current) {
+            add(id, delta(previous, current));
+        }
+
+        /**
+         * A version made by applying edits to the previous version's body
+         */
+        public void edited(Long id, List<NoteBodyEdit> edits) {
+            add(id, json(edits));
+        }
+
+        private void add(Long id, String edits) {
+            revisions.put(id, revisions.containsKey(id) ? null : edits);
+        }
+
+        /**
+         * Write the revisions with one INSERT; the notes must have been flushed
+         */
+        public void record() {
+            if (revisions.isEmpty()) {
+                return;
+            }
+            noteRevisionRepository.insertRevisions(revisions.keySet().toArray(new Long[0]),
+                    revisions.values().toArray(new String[0]), snapshotInterval);
+            revisions.clear();
+        }
+    }
+
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Record the first version of a new note
+     */
+    public void recordCreated(Long id) {
+        Batch batch = batch();
+        batch.created(id);
+        batch.record();
+    }
+
+    /**
+     * Record a version whose body (if changed) was replaced as a whole
+     */
+    public void recordReplaced(Long id, Body previous, Body current) {
+        Batch batch = batch();
+        batch.replaced(id, previous, current);
+        batch.record();
+    }
+
+    /**
+     * Record a version made by applying edits to the previous version's body
+     */
+    public void recordEdited(Long id, List<NoteBodyEdit> edits) {
+        Batch batch = batch();
+        batch.edited(id, edits);
+        batch.record();
+    }
+
+    /**
+     * Edits from one body to the other as JSON, or null where a snapshot is recorded instead
+     */
+    private String delta(Body previous, Body current) {
+        if (previous.sameAs(current)) {
+            return json(List.of());
+        }
+        if (previous.bodyRef != null || current.bodyRef != null) {
+            // offloaded bodies are not read to diff them; the snapshot only copies the reference
+            return null;
+        }
+        String text = text(current.note, null, current.bodyHash);
+        List<NoteBodyEdit> edits = NoteBodyEdits.between(text(previous.note, null, previous.bodyHash), text);
+        long changed = edits.stream()
+                .mapToLong(edit -> edit.getDelete() + (edit.getInsert() != null ? edit.getInsert().length() : 0))
+                .sum();
+        if (text == null || (changed > 0 && changed >= text.length())) {
+            // removed or mostly rewritten: the delta would be no smaller than the body
+            return null;
+        }
+        return json(edits);
+    }
+
+    private String json(List<NoteBodyEdit> edits) {
+        try {
+            return objectMapper.writeValueAsString(edits);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize note edits", e);
+        }
+    }
+
+    /**
+     * Recorded versions of a note, newest first, below "before"
+     */
+    public List<NoteRevisionSummary> getRevisions(Long id, int before, int size) {
+        return noteRevisionRepository.findByNoteIdAndVersionLessThanOrderByVersionDesc(id, before, PageRequest.of(0, size));
+    }
+
+    /**
+     * Reconstruct a version: the nearest snapshot at or before it, with the deltas after it replayed.
+     * Empty if the version is not in the history.
+     */
+    public Optional<NoteRevision> getRevision(Long id, int version) {
+        Optional<StoredNoteRevision> snapshot = noteRevisionRepository.findSnapshot(id, version);
+        if (snapshot.isEmpty()) {
+            return Optional.empty();
+        }
+        StoredNoteRevision revision = snapshot.get();
+        List<StoredNoteRevision> deltas = noteRevisionRepository
+                .findByNoteIdAndVersionBetweenOrderByVersionAsc(id, revision.getVersion() + 1, version);
+        if (deltas.size() != version - revision.getVersion()) {
+            return Optional.empty();
+        }
+
+        String text = text(revision.getNote(), revision.getBodyRef(), revision.getBodyHash());
+        for (StoredNoteRevision delta : deltas) {
+            try {
+                text = NoteBodyEdits.apply(text, objectMapper.readValue(delta.getEdits(), EDITS));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Corrupt revision " + version + " of note " + id, e);
+            }
+            revision = delta;
+        }
+        return Optional.of(new NoteRevision(id, version, revision.getTitle(), text, revision.getCreatedAt()));
+    }
+
+    private String text(String note, String bodyRef, String bodyHash) {
+        if (bodyRef != null) {
+            try {
+                return Files.readString(noteBlobStore.path(bodyRef), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read note body " + bodyRef, e);
+            }
+        }
+        if (bodyHash != null) {
+            return noteBodyStore.load(bodyHash);
+        }
+        return note;
+    }
+}
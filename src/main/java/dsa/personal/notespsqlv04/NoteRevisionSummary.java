@@ -0,0 +1,15 @@
+package dsa.personal.notespsqlv04;
+
+import java.sql.Timestamp;
+
+/**
+ * Closed projection of a revision for history listings, without its body or edits.
+ */
+public interface NoteRevisionSummary {
+
+    int getVersion();
+
+    String getTitle();
+
+    Timestamp getCreatedAt();
+}
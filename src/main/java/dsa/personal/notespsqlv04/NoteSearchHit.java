@@ -0,0 +1,64 @@
+package dsa.personal.notespsqlv04;
+
+import java.sql.Timestamp;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Projection for a full-text search match: note metadata, rank and a highlighted body snippet.
+ * The full note body is not loaded.
+ */
+public interface NoteSearchHit {
+
+    Long getId();
+
+    String getTitle();
+
+    Timestamp getTimestamp();
+
+    Float getRank();
+
+    // set for a body stored outside the notes table, whose snippet is computed from the stored body
+    @JsonIgnore
+    String getBodyRef();
+
+    @JsonIgnore
+    String getBodyHash();
+
+    String getSnippet();
+
+    /**
+     * A hit with a snippet computed outside the search query
+     */
+    final class WithSnippet implements NoteSearchHit {
+        private final NoteSearchHit hit;
+        private final String snippet;
+
+        public WithSnippet(NoteSearchHit hit, String snippet) {
+            this.hit = hit;
+            this.snippet = snippet;
+        }
+
+        public Long getId() {
+            return hit.getId();
+        }
+        public String getTitle() {
+            return hit.getTitle();
+        }
+        public Timestamp getTimestamp() {
+            return hit.getTimestamp();
+        }
+        public Float getRank() {
+            return hit.getRank();
+        }
+        public String getBodyRef() {
+            return hit.getBodyRef();
+        }
+        public String getBodyHash() {
+            return hit.getBodyHash();
+        }
+        public String getSnippet() {
+            return snippet;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package dsa.personal.notespsqlv04;
+
+import java.util.List;
+
+/**
+ * One page of full-text search results, best match first.
+ * nextCursor is the value to pass as "cursor" for the following page, or null on the last page.
+ */
+public class NoteSearchPage {
+    private List<NoteSearchHit> hits;
+    private int size;
+    private String nextCursor;
+
+    public NoteSearchPage() {
+    }
+
+    public NoteSearchPage(List<NoteSearchHit> hits, String nextCursor) {
+        this.hits = hits;
+        this.size = hits.size();
+        this.nextCursor = nextCursor;
+    }
+
+    public List<NoteSearchHit> getHits() {
+        return hits;
+    }
+    public void setHits(List<NoteSearchHit> hits) {
+        this.hits = hits;
+    }
+    public int getSize() {
+        return size;
+    }
+    public void setSize(int size) {
+        this.size = size;
+    }
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    @Override
+    public String toString() {
+        return "NoteSearchPage [size=" + size + ", nextCursor=" + nextCursor + "]";
+    }
+
+}
@@ -0,0 +1,24 @@
+package dsa.personal.notespsqlv04;
+
+import java.sql.Timestamp;
+
+/**
+ * Closed projection of a note without its body.
+ * Spring Data selects only these columns, so the note text is never read.
+ */
+public interface NoteSummary {
+
+    Long getId();
+
+    String getTitle();
+
+    String getBodyRef();
+
+    Long getBodySize();
+
+    Timestamp getTimestamp();
+
+    Timestamp getUpdatedAt();
+
+    int getVersion();
+}
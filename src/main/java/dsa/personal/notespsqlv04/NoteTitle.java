@@ -0,0 +1,27 @@
+package dsa.personal.notespsqlv04;
+
+/**
+ * Lightweight note reference (id and title) used for typeahead results.
+ * Also serves as a Spring Data DTO projection, so it must keep a single constructor.
+ */
+public class NoteTitle {
+    private final Long id;
+    private final String title;
+
+    public NoteTitle(Long id, String title) {
+        this.id = id;
+        this.title = title;
+    }
+
+    public Long getId() {
+        return id;
+    }
+    public String getTitle() {
+        return title;
+    }
+    @Override
+    public String toString() {
+        return "NoteTitle [id=" + id + ", title=" + title + "]";
+    }
+
+}
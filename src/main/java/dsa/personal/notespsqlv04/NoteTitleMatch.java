@@ -0,0 +1,13 @@
+package dsa.personal.notespsqlv04;
+
+/**
+ * Projection for a fuzzy title match: note id, title and trigram similarity (0..1).
+ */
+public interface NoteTitleMatch {
+
+    Long getId();
+
+    String getTitle();
+
+    Float getSimilarity();
+}
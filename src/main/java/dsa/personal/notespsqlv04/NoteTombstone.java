@@ -0,0 +1,51 @@
+package dsa.personal.notespsqlv04;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.sql.Timestamp;
+
+/**
+ * Record of a deleted note, kept so that delta-sync clients learn about deletions.
+ */
+@Entity
+@Table(name = "note_tombstones")
+public class NoteTombstone {
+
+    @Id
+    @Column(name = "note_id")
+    private Long noteId;
+
+    @Column(name = "deleted_at", nullable = false)
+    private Timestamp deletedAt;
+
+    public NoteTombstone() {
+    }
+
+    public NoteTombstone(Long noteId, Timestamp deletedAt) {
+        this.noteId = noteId;
+        this.deletedAt = deletedAt;
+    }
+
+    public Long getNoteId() {
+        return noteId;
+    }
+
+    public void setNoteId(Long noteId) {
+        this.noteId = noteId;
+    }
+
+    public Timestamp getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(Timestamp deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "NoteTombstone [noteId=" + noteId + ", deletedAt=" + deletedAt + "]";
+    }
+}
@@ -0,0 +1,27 @@
+package dsa.personal.notespsqlv04;
+
+/**
+ * Id and version of a note, read without the note body to compute ETags.
+ * Also serves as a Spring Data DTO projection, so it must keep a single constructor.
+ */
+public class NoteVersion {
+    private final Long id;
+    private final int version;
+
+    public NoteVersion(Long id, int version) {
+        this.id = id;
+        this.version = version;
+    }
+
+    public Long getId() {
+        return id;
+    }
+    public int getVersion() {
+        return version;
+    }
+    @Override
+    public String toString() {
+        return "NoteVersion [id=" + id + ", version=" + version + "]";
+    }
+
+}
@@ -0,0 +1,17 @@
+package dsa.personal.notespsqlv04;
+
+import java.util.Collection;
+
+/**
+ * Thrown when a conditional write names a note version that is no longer current.
+ */
+public class NoteVersionConflictException extends RuntimeException {
+
+    public NoteVersionConflictException(Long id, int expectedVersion) {
+        super("Note " + id + " is no longer at version " + expectedVersion);
+    }
+
+    public NoteVersionConflictException(Long id, Collection<Integer> expectedVersions) {
+        super("Note " + id + " is at none of versions " + expectedVersions);
+    }
+}
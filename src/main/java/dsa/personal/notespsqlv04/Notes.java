@@ -1,24 +1,66 @@
 package dsa.personal.notespsqlv04;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import jakarta.persistence.Version;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Transient;
 import java.sql.Timestamp;
 
+import org.hibernate.Length;
+import org.hibernate.annotations.Where;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 @Entity
+@Table(name = "notes", indexes = {
+	@Index(name = "idx_notes_body_ref", columnList = "body_ref"),
+	@Index(name = "idx_notes_body_hash", columnList = "body_hash")
+})
+@Where(clause = "deleted_at IS NULL")
+@JsonFilter(Notes.FIELDS_FILTER)
 public class Notes {
+
+	public static final String FIELDS_FILTER = "notesFields";
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notes_seq")
+	@SequenceGenerator(name = "notes_seq", sequenceName = "notes_seq", allocationSize = 50)
     private Long id;
 	private String title;
+	// null when the body is offloaded to the blob store (bodyRef) or stored compressed (bodyHash)
+	// text; LONG32 rather than a columnDefinition so that schema update sees the type as unchanged
+	@Column(length = Length.LONG32)
 	private String note;
+	// SHA-256 of a compressed body in note_bodies, see NoteBodyStore
+	@Column(name = "body_hash", length = 64)
+	private String bodyHash;
+	// compressed body filled in by NoteBodyStore; not mapped, so never written back
+	@Transient
+	private String loadedBody;
+	// SHA-256 of a body kept in NoteBlobStore, served by GET /notes/{id}/body
+	@Column(name = "body_ref", length = 64)
+	private String bodyRef;
+	@Column(name = "body_size")
+	private Long bodySize;
+	@Column(updatable = false)
 	private Timestamp timestamp;
+	@Column(name = "updated_at")
+	private Timestamp updatedAt;
 	@Version
 	private int version;
+	// set only by the bulk soft-delete statement; soft-deleted rows are hidden by @Where until purged
+	@Column(name = "deleted_at", insertable = false, updatable = false)
+	private Timestamp deletedAt;
 
 	public Notes() {
 	}
@@ -32,7 +74,13 @@ public class Notes {
     	@PrePersist
     	protected void onCreate() {
         	timestamp = new Timestamp(System.currentTimeMillis());
+        	updatedAt = timestamp;
     	}
+
+	@PreUpdate
+	protected void onUpdate() {
+		updatedAt = new Timestamp(System.currentTimeMillis());
+	}
 	
 	public Long getId() {
 		return id;
@@ -59,11 +107,45 @@ public class Notes {
 	}
 
 	public String getNote() {
-		return note;
+		return note != null ? note : loadedBody;
 	}
 
 	public void setNote(String note) {
 		this.note = note;
+		this.loadedBody = null;
+	}
+
+	@JsonIgnore
+	public String getBodyHash() {
+		return bodyHash;
+	}
+
+	@JsonIgnore
+	public void setBodyHash(String bodyHash) {
+		this.bodyHash = bodyHash;
+	}
+
+	@JsonIgnore
+	public void setLoadedBody(String loadedBody) {
+		this.loadedBody = loadedBody;
+	}
+
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public String getBodyRef() {
+		return bodyRef;
+	}
+
+	public void setBodyRef(String bodyRef) {
+		this.bodyRef = bodyRef;
+	}
+
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public Long getBodySize() {
+		return bodySize;
+	}
+
+	public void setBodySize(Long bodySize) {
+		this.bodySize = bodySize;
 	}
 
 	public Timestamp getTimestamp() {
@@ -74,6 +156,14 @@ public class Notes {
 		this.timestamp = timestamp;
 	}
 
+	public Timestamp getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public void setUpdatedAt(Timestamp updatedAt) {
+		this.updatedAt = updatedAt;
+	}
+
 	@Override
 	public String toString() {
 		return "Notes [id=" + id + ", title=" + title + ", note=" + note + ", timestamp=" + timestamp + "]";
@@ -0,0 +1,38 @@
+package dsa.personal.notespsqlv04;
+
+import java.util.List;
+
+/**
+ * Result of a multi-get: the notes found, in the order their ids were requested,
+ * and the requested ids that do not exist.
+ */
+public class NotesByIds {
+    private List<Notes> notes;
+    private List<Long> missing;
+
+    public NotesByIds() {
+    }
+
+    public NotesByIds(List<Notes> notes, List<Long> missing) {
+        this.notes = notes;
+        this.missing = missing;
+    }
+
+    public List<Notes> getNotes() {
+        return notes;
+    }
+    public void setNotes(List<Notes> notes) {
+        this.notes = notes;
+    }
+    public List<Long> getMissing() {
+        return missing;
+    }
+    public void setMissing(List<Long> missing) {
+        this.missing = missing;
+    }
+    @Override
+    public String toString() {
+        return "NotesByIds [notes=" + notes.size() + ", missing=" + missing + "]";
+    }
+
+}
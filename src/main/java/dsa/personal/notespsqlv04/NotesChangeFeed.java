@@ -0,0 +1,265 @@
+package dsa.personal.notespsqlv04;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pushes note changes to SSE subscribers.
+ * Every node listens on the notes_changes channel (fed by triggers, see db/notes-notify.sql), but a
+ * notification only wakes the tail: a single thread that reads the change feed from where it left off
+ * and fans the changes out, so events carry feed cursors and arrive in feed order, from all nodes.
+ * The tail also polls every notes.changes.poll-interval, for changes the feed held back behind a
+ * transaction still in flight. Each subscriber has a bounded buffer drained by a small sender pool;
+ * a subscriber that falls behind catches up from the change feed at its own pace, as does a client
+ * reconnecting with Last-Event-ID.
+ * Delivery is at-least-once: catching up may repeat events.
+ */
+@Component
+public class NotesChangeFeed implements PgNotificationListener.NotificationHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotesChangeFeed.class);
+
+    public static final String CHANNEL = "notes_changes";
+    private static final String EVENT_NAME = "note-change";
+
+    @Autowired
+    private PgNotificationListener notificationListener;
+
+    @Autowired
+    private NotesService notesService;
+
+    @Autowired
+    private NotesResponseCache notesResponseCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${notes.stream.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${notes.stream.sender-threads:4}")
+    private int senderThreads;
+
+    @Value("${notes.stream.timeout:30m}")
+    private Duration timeout;
+
+    @Value("${notes.changes.poll-interval:5s}")
+    private Duration pollInterval;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean pollRequested = new AtomicBoolean();
+    private ExecutorService senders;
+    private ScheduledExecutorService tail;
+    private NoteChangeCursor tailCursor;  // tail thread only; null while nobody is subscribed
+
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final BlockingQueue<NoteChangeEvent> buffer;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        // set when the buffer overflowed (and initially): catch up from the change feed before draining it
+        final AtomicBoolean behind = new AtomicBoolean(true);
+        NoteChangeCursor lastSent;  // sender threads only, one at a time
+        volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, int bufferSize, NoteChangeCursor from) {
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+            this.lastSent = from;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        senders = Executors.newFixedThreadPool(senderThreads);
+        tail = Executors.newSingleThreadScheduledExecutor();
+        tail.scheduleWithFixedDelay(this::requestPoll, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        notificationListener.subscribe(CHANNEL, this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(this::close);
+        tail.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Open a stream; with a last event id, changes after it are replayed before live events
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        NoteChangeCursor from = lastEventId != null
+                ? NoteChangeCursor.parse(lastEventId)
+                : notesService.getChangesHead();
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter, bufferSize, from);
+        // register before catching up, so nothing the tail reads in between is missed
+        subscribers.add(subscriber);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> close(subscriber));
+        emitter.onError(e -> close(subscriber));
+        logger.debug("SSE subscriber added, resuming from {} ({} subscribers)", from, subscribers.size());
+        schedule(subscriber);
+        requestPoll();
+        return emitter;
+    }
+
+    @Override
+    public void onNotification(String payload) {
+        try {
+            JsonNode json = objectMapper.readTree(payload);
+            if (json.path("bulk").asBoolean()) {
+                // bulk import: one notification for all its rows, the tail reads them from the feed
+                requestPoll();
+                return;
+            }
+            long id = json.get("id").asLong();
+            boolean deleted = json.get("deleted").asBoolean();
+            // keeps the response cache coherent with writes made on other nodes
+            notesResponseCache.invalidate(id, deleted ? Integer.MAX_VALUE : json.get("version").asInt());
+        } catch (JsonProcessingException | RuntimeException e) {
+            logger.warn("Ignoring malformed notes notification: {}", payload, e);
+        }
+        requestPoll();
+    }
+
+    /**
+     * Notifications sent while the listener was down are lost, but the changes are in the feed
+     */
+    @Override
+    public void onReconnect() {
+        requestPoll();
+    }
+
+    private void requestPoll() {
+        if (pollRequested.compareAndSet(false, true)) {
+            try {
+                tail.execute(this::poll);
+            } catch (RuntimeException e) {
+                // shutting down
+                pollRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Read the change feed from the tail cursor to its current end and hand every change to every subscriber
+     */
+    private void poll() {
+        pollRequested.set(false);
+        if (subscribers.isEmpty()) {
+            tailCursor = null;
+            return;
+        }
+        try {
+            if (tailCursor == null) {
+                // subscribers catch up to here by themselves
+                tailCursor = notesService.getChangesHead();
+            }
+            NoteChangesPage page;
+            do {
+                page = notesService.getChanges(tailCursor.toString(), NotesService.MAX_PAGE_SIZE);
+                for (NoteChange change : page.getChanges()) {
+                    publish(NoteChangeEvent.of(change));
+                }
+                tailCursor = NoteChangeCursor.parse(page.getNextCursor());
+            } while (page.isHasMore() && !subscribers.isEmpty());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to read the notes change feed, retrying on the next poll", e);
+        }
+    }
+
+    private void publish(NoteChangeEvent event) {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.buffer.offer(event) && subscriber.behind.compareAndSet(false, true)) {
+                logger.debug("SSE subscriber fell behind by {} events, catching up from the change feed", bufferSize);
+            }
+            schedule(subscriber);
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            while (!subscriber.closed) {
+                if (subscriber.behind.getAndSet(false)) {
+                    // the change feed has everything buffered so far
+                    subscriber.buffer.clear();
+                    catchUp(subscriber);
+                    continue;
+                }
+                NoteChangeEvent event = subscriber.buffer.poll();
+                if (event == null) {
+                    break;
+                }
+                if (event.position().compareTo(subscriber.lastSent) > 0) {
+                    send(subscriber, event);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("SSE subscriber send failed, disconnecting", e);
+            close(subscriber);
+        } finally {
+            subscriber.scheduled.set(false);
+            if (!subscriber.closed && (subscriber.behind.get() || !subscriber.buffer.isEmpty())) {
+                schedule(subscriber);
+            }
+        }
+    }
+
+    private void catchUp(Subscriber subscriber) throws IOException {
+        NoteChangesPage page;
+        do {
+            page = notesService.getChanges(subscriber.lastSent.toString(), NotesService.MAX_PAGE_SIZE);
+            for (NoteChange change : page.getChanges()) {
+                send(subscriber, NoteChangeEvent.of(change));
+            }
+        } while (page.isHasMore() && !subscriber.closed);
+    }
+
+    private void send(Subscriber subscriber, NoteChangeEvent event) throws IOException {
+        subscriber.emitter.send(SseEmitter.event()
+                .id(event.getCursor())
+                .name(EVENT_NAME)
+                .data(event, MediaType.APPLICATION_JSON));
+        subscriber.lastSent = event.position();
+    }
+
+    private void close(Subscriber subscriber) {
+        if (subscriber.closed) {
+            return;
+        }
+        subscriber.closed = true;
+        subscribers.remove(subscriber);
+        subscriber.emitter.complete();
+    }
+}
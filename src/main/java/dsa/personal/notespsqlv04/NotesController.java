@@ -1,21 +1,51 @@
 package dsa.personal.notespsqlv04;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
 /**
  * REST Controller for Notes management with permission-based access control.
  * Uses dynamic RBAC permissions defined in permissions.yml
@@ -25,9 +55,24 @@ public class NotesController {
 
 	private static final Logger logger = LoggerFactory.getLogger(NotesController.class);
 
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV = "text/csv";
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final String MERGE_PATCH = "application/merge-patch+json";
+    private static final byte[] NULL_JSON = "null".getBytes(StandardCharsets.UTF_8);
+
     @Autowired
     private NotesService notesService;
 
+    @Autowired
+    private NotesChangeFeed notesChangeFeed;
+
+    @Autowired
+    private NotesImporter notesImporter;
+
     /**
      * Create a new note
      * Requires NOTES:CREATE permission
@@ -40,6 +85,18 @@ public class NotesController {
         return;
     }
 
+    /**
+     * Create or update many notes in one request, persisted with JDBC batching
+     * Notes without an id are created, notes with an id are updated
+     * Requires NOTES:CREATE and NOTES:MODIFY permissions
+     */
+    @PostMapping("/notes/bulk")
+    @PreAuthorize("hasAuthority('NOTES:CREATE') and hasAuthority('NOTES:MODIFY')")
+    public List<BulkNoteResult> saveNotes(@RequestBody List<Notes> notes) {
+        logger.info("Saving {} notes in bulk", notes.size());
+        return notesService.saveNotes(notes);
+    }
+
     /**
      * Update an existing note
      * Requires NOTES:MODIFY permission
@@ -54,25 +111,376 @@ public class NotesController {
     }
 
     /**
-     * Get all notes
+     * Partially update a note with a JSON Merge Patch, in one conditional UPDATE
+     * The expected version is given by If-Match (the note ETag, a list of them, or "*") or a "version" member;
+     * responds 409 if the note has moved on, and returns the new ETag.
+     * Requires NOTES:MODIFY permission
+     */
+    @PatchMapping(value = "/notes/{id}", consumes = {MERGE_PATCH, MediaType.APPLICATION_JSON_VALUE})
+    @PreAuthorize("hasAuthority('NOTES:MODIFY')")
+    public ResponseEntity<Void> patchNote(@PathVariable Long id, @RequestBody JsonNode patch,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        logger.info("Patching note with id: {}", id);
+        int version = notesService.patchNote(id, ifMatch, patch);
+        return ResponseEntity.noContent()
+                .eTag(NotesService.noteETag(id, version))
+                .build();
+    }
+
+    /**
+     * Edit the body of a note with a delta: {"version": n, "edits": [{"offset", "delete", "insert"}]},
+     * each edit replacing "delete" characters at "offset" of version n with "insert". Only the changed
+     * text is sent, however large the note. The version may be given by If-Match instead;
+     * responds 409 if the note has moved on, and returns the new ETag.
+     * Requires NOTES:MODIFY permission
+     */
+    @PatchMapping(value = "/notes/{id}/body", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasAuthority('NOTES:MODIFY')")
+    public ResponseEntity<Void> patchNoteBody(@PathVariable Long id, @RequestBody NoteBodyPatch patch,
+                                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws IOException {
+        logger.info("Patching body of note with id: {}", id);
+        int version = notesService.patchNoteBody(id, ifMatch, patch);
+        return ResponseEntity.noContent()
+                .eTag(NotesService.noteETag(id, version))
+                .build();
+    }
+
+    /**
+     * Get a page of notes ordered by id, using keyset pagination.
+     * Pass the nextCursor of the previous page as "after" to continue.
+     * Returns 304 if If-None-Match matches the page ETag (checked with an id/version-only query).
+     * Use "fields" (e.g. fields=id,title,timestamp) to return only some fields; bodies are
+     * not read from the database unless "note" is requested.
      * Requires NOTES:READ permission
      */
     @GetMapping("/notes")
     @PreAuthorize("hasAuthority('NOTES:READ')")
-    public List<Notes> getNotes() {
-        logger.debug("Fetching all notes");
-        return notesService.getAllNotes();
+    public ResponseEntity<MappingJacksonValue> getNotes(@RequestParam(required = false) Long after,
+                                                        @RequestParam(required = false) Integer size,
+                                                        @RequestParam(required = false) String fields,
+                                                        WebRequest request) {
+        logger.debug("Fetching notes after: {} size: {} fields: {}", after, size, fields);
+        Set<String> fieldSet = NotesService.parseFields(fields);
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(notesService.getNotesPageETag(after, size, fieldSet))) {
+            return null;
+        }
+        NotesPage page = notesService.getNotesPage(after, size, fieldSet);
+        MappingJacksonValue body = new MappingJacksonValue(page);
+        body.setFilters(NotesService.fieldsFilter(fieldSet));
+        return ResponseEntity.ok()
+                .eTag(notesService.getNotesPageETag(page, fieldSet))
+                .body(body);
+    }
+
+    /**
+     * Multi-get: GET /notes?ids=1,2,3 returns those notes in request order, plus the ids not found.
+     * Accepts "fields" like the listing. NOTES:READ is checked once for the whole request.
+     * Requires NOTES:READ permission
+     */
+    @GetMapping(value = "/notes", params = "ids")
+    @PreAuthorize("hasAuthority('NOTES:READ')")
+    public MappingJacksonValue getNotesByIds(@RequestParam List<Long> ids,
+                                             @RequestParam(required = false) String fields) {
+        logger.debug("Fetching {} notes by id", ids.size());
+        return notesByIds(ids, fields);
+    }
+
+    /**
+     * Multi-get for id lists too long for a query string: the body is a JSON array of ids
+     * Requires NOTES:READ permission
+     */
+    @PostMapping("/notes/multi-get")
+    @PreAuthorize("hasAuthority('NOTES:READ')")
+    public MappingJacksonValue postNotesByIds(@RequestBody List<Long> ids,
+                                              @RequestParam(required = false) String fields) {
+        logger.debug("Fetching {} notes by id", ids.size());
+        return notesByIds(ids, fields);
+    }
+
+    private MappingJacksonValue notesByIds(List<Long> ids, String fields) {
+        Set<String> fieldSet = NotesService.parseFields(fields);
+        MappingJacksonValue body = new MappingJacksonValue(notesService.getNotesByIds(ids, fieldSet));
+        body.setFilters(NotesService.fieldsFilter(fieldSet));
+        return body;
+    }
+
+    /**
+     * Full-text search over note titles and bodies, ranked, with highlighted snippets
+     * Pass the nextCursor of the previous page as "cursor" to continue.
+     * Requires NOTES:READ permission
+     */
+    @GetMapping("/notes/search")
+    @PreAuthorize("hasAuthority('NOTES:READ')")
+    public NoteSearchPage searchNotes(@RequestParam String q,
+                                      @RequestParam(required = false) String cursor,
+                                      @RequestParam(required = false) Integer size) {
+        logger.debug("Searching notes for: {}", q);
+        return notesService.searchNotes(q, cursor, size);
+    }
+
+    /**
+     * Delta sync: ids of notes created, updated or deleted since the cursor, in feed order
+     * Start without "since" and pass the returned nextCursor on every following call.
+     * Requires NOTES:READ permission
+     */
+    @GetMapping("/notes/changes")
+    @PreAuthorize("hasAuthority('NOTES:READ')")
+    public NoteChangesPage getChanges(@RequestParam(required = false) String since,
+                                      @RequestParam(required = false) Integer size) {
+        logger.debug("Fetching note changes since: {}", since);
+        return notesService.getChanges(since, size);
+    }
+
+    /**
+     * Server-Sent Events stream of note changes, pushed as they commit on any node.
+     * Each event id is a change feed cursor: reconnecting with Last-Event-ID (or "since")
+     * replays what was missed before live events continue.
+     * Requires NOTES:READ permission
+     */
+    @GetMapping(value = "/notes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAuthority('NOTES:READ')")
+    public SseEmitter streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                    @RequestParam(required = false) String since) {
+        logger.debug("Opening note change stream from: {}", lastEventId != null ? lastEventId : since);
+        return notesChangeFeed.subscribe(lastEventId != null ? lastEventId : since);
+    }
+
+    /**
+     * Typeahead over note titles, served from the embedded search index
+     * Requires NOTES:READ permission
+     */
+    @GetMapping("/notes/typeahead")
+    @PreAuthorize("hasAuthority('NOTES:READ')")
+    public List<NoteTitle> typeahead(@RequestParam String prefix,
+                                     @RequestParam(required = false) Integer limit) {
+        logger.debug("Typeahead for prefix: {}", prefix);
+        return notesService.typeahead(prefix, limit);
+    }
+
+    /**
+     * Fuzzy title lookup ("did you mean") by trigram similarity
+     * Requires NOTES:READ permission
+     */
+    @GetMapping("/notes/lookup")
+    @PreAuthorize("hasAuthority('NOTES:READ')")
+    public List<NoteTitleMatch> lookupByTitle(@RequestParam String title,
+                                              @RequestParam(required = false) Float threshold,
+                                              @RequestParam(required = false) Integer limit) {
+        logger.debug("Fuzzy lookup for title: {}", title);
+        return notesService.lookupByTitle(title, threshold, limit);
+    }
+
+    /**
+     * Rebuild the embedded search index from the notes table in the background
+     * Requires ADMIN role
+     */
+    @PostMapping("/notes/index/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Void> rebuildSearchIndex() {
+        logger.info("Rebuilding notes search index");
+        if (!notesService.rebuildSearchIndex()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.accepted().build();
+    }
+
+    /**
+     * Export all notes as newline-delimited JSON, streamed row by row
+     * Requires NOTES:READ permission
+     */
+    @GetMapping(value = "/notes/export", produces = NDJSON)
+    @PreAuthorize("hasAuthority('NOTES:READ')")
+    public ResponseEntity<StreamingResponseBody> exportNotes() {
+        logger.info("Exporting all notes");
+        StreamingResponseBody body = out -> {
+            long count = notesService.exportNotes(out);
+            logger.info("Exported {} notes", count);
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"notes.ndjson\"")
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
+    }
+
+    /**
+     * Bulk import from a streamed NDJSON or CSV (header with "title" and optionally "note") body
+     * through PostgreSQL COPY. Invalid records are skipped and reported in the result.
+     * Requires NOTES:CREATE permission
+     */
+    @PostMapping(value = "/notes/import", consumes = {NDJSON, CSV})
+    @PreAuthorize("hasAuthority('NOTES:CREATE')")
+    public NotesImportProgress importNotes(HttpServletRequest request) throws IOException, SQLException {
+        NotesImporter.Format format = MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(MediaType.parseMediaType(CSV))
+                ? NotesImporter.Format.CSV
+                : NotesImporter.Format.NDJSON;
+        logger.info("Importing notes from {}", format);
+        return notesImporter.importNotes(request.getInputStream(), format);
+    }
+
+    /**
+     * Progress of the imports currently running on this node
+     * Requires NOTES:CREATE permission
+     */
+    @GetMapping("/notes/imports")
+    @PreAuthorize("hasAuthority('NOTES:CREATE')")
+    public Collection<NotesImportProgress> getImports() {
+        return notesImporter.getRunningImports();
+    }
+
+    /**
+     * Revision history of a note, newest first; pass the last version seen as "before" for the next page
+     * Requires NOTES:READ permission
+     */
+    @GetMapping("/notes/{id}/revisions")
+    @PreAuthorize("hasAuthority('NOTES:READ')")
+    public List<NoteRevisionSummary> getRevisions(@PathVariable Long id,
+                                                  @RequestParam(required = false) Integer before,
+                                                  @RequestParam(required = false) Integer size) {
+        logger.debug("Fetching revisions of note {} before {}", id, before);
+        return notesService.getRevisions(id, before, size);
+    }
+
+    /**
+     * A past version of a note, reconstructed from its revision history; 404 if it was not recorded
+     * Requires NOTES:READ permission
+     */
+    @GetMapping("/notes/{id}/revisions/{version}")
+    @PreAuthorize("hasAuthority('NOTES:READ')")
+    public ResponseEntity<NoteRevision> getRevision(@PathVariable Long id, @PathVariable int version) {
+        logger.debug("Fetching version {} of note {}", version, id);
+        return ResponseEntity.of(notesService.getRevision(id, version));
+    }
+
+    /**
+     * Raw body of a note as text/plain, with HTTP Range support (single ranges) and a strong ETag.
+     * Offloaded bodies are sent straight from the blob store file: with Tomcat sendfile when
+     * available, otherwise with FileChannel.transferTo, so they never pass through the Java heap.
+     * Requires NOTES:READ permission
+     */
+    @GetMapping("/notes/{id}/body")
+    @PreAuthorize("hasAuthority('NOTES:READ')")
+    public void getNoteBody(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        NoteBody body = notesService.getNoteBody(id).orElseThrow(() -> new NoteNotFoundException(id));
+
+        Path file = null;
+        byte[] inline = null;
+        long length;
+        String eTag;
+        if (body.getBodyRef() != null) {
+            file = notesService.getBodyPath(body.getBodyRef());
+            length = Files.size(file);
+            eTag = "\"" + body.getBodyRef() + "\"";
+        } else {
+            String text = body.getBodyHash() != null ? notesService.getStoredBody(body.getBodyHash()) : body.getNote();
+            inline = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+            length = inline.length;
+            eTag = NotesService.noteETag(id, body.getVersion(), Set.of("body"));
+        }
+
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (eTag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(eTag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();  // malformed: ignore the header and send the whole body
+            }
+            if (ranges.size() == 1) {
+                try {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentType("text/plain;charset=UTF-8");
+        response.setContentLengthLong(count);
+        if (inline != null) {
+            response.getOutputStream().write(inline, (int) start, (int) count);
+        } else {
+            sendFile(request, response, file, start, count);
+        }
+    }
+
+    private void sendFile(HttpServletRequest request, HttpServletResponse response, Path file, long start, long count)
+            throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the file to the socket itself once this method returns
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + count);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    throw new EOFException("Note body file ended early: " + file);
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
     }
 
     /**
-     * Get a specific note by ID
+     * Get a specific note by ID, served from the serialized response cache when hot
+     * Returns 304 if If-None-Match matches the note ETag (checked with a version-only query).
+     * Supports the same "fields" parameter as the listing.
      * Requires NOTES:READ permission
      */
     @GetMapping("/notes/{id}")
     @PreAuthorize("hasAuthority('NOTES:READ')")
-    public Optional<Notes> getNote(@PathVariable Long id) {
+    public void getNote(@PathVariable Long id,
+                        @RequestParam(required = false) String fields,
+                        WebRequest request, HttpServletResponse response) throws IOException {
         logger.debug("Fetching note with id: {}", id);
-        return notesService.getNotes(id);
+        Set<String> fieldSet = NotesService.parseFields(fields);
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Optional<String> etag = notesService.getNoteETag(id, fieldSet);
+            if (etag.isPresent() && request.checkNotModified(etag.get())) {
+                return;
+            }
+        }
+
+        NoteJson note = notesService.getNoteJson(id, fieldSet);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        if (note == null) {
+            response.getOutputStream().write(NULL_JSON);
+            return;
+        }
+        response.setHeader(HttpHeaders.ETAG, NotesService.noteETag(note.getId(), note.getVersion(), fieldSet));
+        // written straight from the (off-heap) buffer, in the channel's small chunks rather than a full copy
+        ByteBuffer body = note.getBody();
+        response.setContentLength(body.remaining());
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        while (body.hasRemaining()) {
+            out.write(body);
+        }
     }
 
     /**
@@ -87,6 +495,19 @@ public class NotesController {
         return;
     }
 
+    /**
+     * Delete many notes at once; the body is a JSON array of ids.
+     * Notes are soft-deleted in one statement and purged in the background.
+     * Returns the ids that were deleted.
+     * Requires NOTES:DELETE permission
+     */
+    @PostMapping("/notes/bulk-delete")
+    @PreAuthorize("hasAuthority('NOTES:DELETE')")
+    public List<Long> deleteNotes(@RequestBody List<Long> ids) {
+        logger.info("Deleting {} notes", ids.size());
+        return notesService.deleteNotes(ids);
+    }
+
     /**
      * Health check endpoint - no authentication required
      */
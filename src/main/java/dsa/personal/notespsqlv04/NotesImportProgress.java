@@ -0,0 +1,94 @@
+package dsa.personal.notespsqlv04;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Progress of one bulk import, updated by the importing request thread as it goes.
+ * Returned by GET /notes/imports while the import runs, and as the result once it is done.
+ */
+public class NotesImportProgress {
+
+    public enum Status {
+        COPYING,    // streaming validated records into the staging table
+        INSERTING,  // moving the staging table into notes
+        COMPLETED,
+        FAILED
+    }
+
+    private final String id;
+    private final String format;
+    private final Timestamp startedAt;
+    private volatile Status status = Status.COPYING;
+    private volatile long bytesRead;
+    private volatile long recordsRead;
+    private volatile long recordsRejected;
+    private volatile long notesImported;
+    private volatile String message;
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+
+    public NotesImportProgress(String id, String format) {
+        this.id = id;
+        this.format = format;
+        this.startedAt = new Timestamp(System.currentTimeMillis());
+    }
+
+    public String getId() {
+        return id;
+    }
+    public String getFormat() {
+        return format;
+    }
+    public Timestamp getStartedAt() {
+        return startedAt;
+    }
+    public Status getStatus() {
+        return status;
+    }
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+    public void setRecordsRead(long recordsRead) {
+        this.recordsRead = recordsRead;
+    }
+    public long getRecordsRejected() {
+        return recordsRejected;
+    }
+    public void setRecordsRejected(long recordsRejected) {
+        this.recordsRejected = recordsRejected;
+    }
+    public long getNotesImported() {
+        return notesImported;
+    }
+    public void setNotesImported(long notesImported) {
+        this.notesImported = notesImported;
+    }
+    public String getMessage() {
+        return message;
+    }
+    public void setMessage(String message) {
+        this.message = message;
+    }
+    /**
+     * The first rejected records, with their record number and reason
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+    @Override
+    public String toString() {
+        return "NotesImportProgress [id=" + id + ", status=" + status + ", recordsRead=" + recordsRead
+                + ", recordsRejected=" + recordsRejected + ", notesImported=" + notesImported + "]";
+    }
+
+}
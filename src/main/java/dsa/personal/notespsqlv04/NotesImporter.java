@@ -0,0 +1,372 @@
+package dsa.personal.notespsqlv04;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Bulk import of notes from an NDJSON or CSV stream through PostgreSQL COPY.
+ * Records are parsed and validated as they arrive and piped straight into COPY FROM STDIN
+ * on a session-local staging table, so the upload is never held in memory. Once the upload
+ * is complete, the staging table is moved into notes with a single INSERT ... SELECT in a
+ * second, short transaction: a failed or rejected upload never touches notes.
+ * Only title and note are imported (extra fields, e.g. from /notes/export, are ignored);
+ * ids come from notes_seq. Bodies above the inline limit are written to the blob store as they
+ * are read and staged as references.
+ */
+@Service
+public class NotesImporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotesImporter.class);
+
+    public enum Format {
+        NDJSON,
+        CSV
+    }
+
+    // notes.title is varchar(255)
+    private static final int MAX_TITLE_LENGTH = 255;
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final int COPY_BUFFER_SIZE = 65536;
+    private static final long PROGRESS_LOG_INTERVAL = 100_000;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private NoteBlobStore noteBlobStore;
+
+    @Value("${notes.import.max-rejected:1000}")
+    private long maxRejected;
+
+    private final Map<String, NotesImportProgress> running = new ConcurrentHashMap<>();
+
+    public Collection<NotesImportProgress> getRunningImports() {
+        return running.values();
+    }
+
+    /**
+     * Import every valid record of the stream; invalid records are skipped and reported.
+     * The import is aborted (and nothing is imported) once more than notes.import.max-rejected
+     * records have been rejected.
+     */
+    public NotesImportProgress importNotes(InputStream body, Format format) throws IOException, SQLException {
+        NotesImportProgress progress = new NotesImportProgress(UUID.randomUUID().toString(), format.name());
+        running.put(progress.getId(), progress);
+        logger.info("Starting notes import {} ({})", progress.getId(), format);
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                copyToStaging(connection, new CountingInputStream(body, progress), format, progress);
+                connection.commit();
+                progress.setStatus(NotesImportProgress.Status.INSERTING);
+                insertFromStaging(connection, progress);
+                progress.setStatus(NotesImportProgress.Status.COMPLETED);
+            } catch (IOException | SQLException | RuntimeException e) {
+                connection.rollback();
+                progress.setStatus(NotesImportProgress.Status.FAILED);
+                progress.setMessage(e.getMessage());
+                logger.warn("Notes import {} failed after {} records: {}",
+                        progress.getId(), progress.getRecordsRead(), e.getMessage());
+                throw e;
+            } finally {
+                dropStaging(connection);
+            }
+        } finally {
+            running.remove(progress.getId());
+        }
+        logger.info("Notes import {} completed: {} notes imported, {} records rejected",
+                progress.getId(), progress.getNotesImported(), progress.getRecordsRejected());
+        return progress;
+    }
+
+    private void copyToStaging(Connection connection, InputStream in, Format format, NotesImportProgress progress)
+            throws IOException, SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS notes_import");
+            statement.execute("CREATE TEMP TABLE notes_import (line bigint, title text, note text, body_ref text, body_size bigint, search_text text)");
+        }
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try (Writer copy = new OutputStreamWriter(new PGCopyOutputStream(pgConnection,
+                "COPY notes_import (line, title, note, body_ref, body_size, search_text) FROM STDIN WITH (FORMAT csv)", COPY_BUFFER_SIZE),
+                StandardCharsets.UTF_8)) {
+            if (format == Format.CSV) {
+                copyCsv(reader, copy, progress);
+            } else {
+                copyNdjson(reader, copy, progress);
+            }
+        }
+    }
+
+    private void copyNdjson(BufferedReader reader, Writer copy, NotesImportProgress progress) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            long record = nextRecord(progress);
+            try {
+                JsonNode json = objectMapper.readTree(line);
+                if (!json.isObject()) {
+                    throw new IllegalArgumentException("Not a JSON object");
+                }
+                copyRecord(copy, record, textField(json, "title"), textField(json, "note"));
+            } catch (JsonProcessingException e) {
+                reject(progress, record, "Invalid JSON: " + e.getOriginalMessage());
+            } catch (IllegalArgumentException e) {
+                reject(progress, record, e.getMessage());
+            }
+        }
+    }
+
+    private void copyCsv(BufferedReader reader, Writer copy, NotesImportProgress progress) throws IOException {
+        CsvRecordReader csv = new CsvRecordReader(reader);
+        List<String> header = csv.next();
+        if (header == null) {
+            return;
+        }
+        header.set(0, header.get(0).replace("\uFEFF", ""));
+        header.replaceAll(String::trim);
+        int titleColumn = header.indexOf("title");
+        int noteColumn = header.indexOf("note");
+        if (titleColumn < 0) {
+            throw new IllegalArgumentException("CSV header must contain a \"title\" column");
+        }
+
+        List<String> fields;
+        while ((fields = csv.next()) != null) {
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                continue;
+            }
+            long record = nextRecord(progress);
+            try {
+                if (fields.size() != header.size()) {
+                    throw new IllegalArgumentException("Expected " + header.size() + " fields but found " + fields.size());
+                }
+                copyRecord(copy, record, fields.get(titleColumn), noteColumn < 0 ? null : fields.get(noteColumn));
+            } catch (IllegalArgumentException e) {
+                reject(progress, record, e.getMessage());
+            }
+        }
+    }
+
+    private long nextRecord(NotesImportProgress progress) {
+        long record = progress.getRecordsRead() + 1;
+        progress.setRecordsRead(record);
+        if (record % PROGRESS_LOG_INTERVAL == 0) {
+            logger.info("Notes import {}: {} records read, {} rejected",
+                    progress.getId(), record, progress.getRecordsRejected());
+        }
+        return record;
+    }
+
+    private void reject(NotesImportProgress progress, long record, String reason) {
+        long rejected = progress.getRecordsRejected() + 1;
+        progress.setRecordsRejected(rejected);
+        if (progress.getErrors().size() < MAX_REPORTED_ERRORS) {
+            progress.getErrors().add("Record " + record + ": " + reason);
+        }
+        if (rejected > maxRejected) {
+            throw new IllegalStateException("Import aborted: more than " + maxRejected + " records rejected");
+        }
+    }
+
+    private static String textField(JsonNode json, String name) {
+        JsonNode value = json.get(name);
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (!value.isTextual()) {
+            throw new IllegalArgumentException("Field must be a string or null: " + name);
+        }
+        return value.asText();
+    }
+
+    /**
+     * Validate one record and write it to COPY as a CSV row; null is written as an unquoted empty field.
+     * A body above the inline limit goes to the blob store and only its reference is staged,
+     * with the part of it that is indexed for full-text search.
+     */
+    private void copyRecord(Writer copy, long record, String title, String note) throws IOException {
+        validateField("title", title);
+        validateField("note", note);
+        if (title != null && title.length() > MAX_TITLE_LENGTH) {
+            throw new IllegalArgumentException("Field title is longer than " + MAX_TITLE_LENGTH + " characters");
+        }
+        String bodyRef = null;
+        String bodySize = null;
+        String searchText = null;
+        if (note != null) {
+            byte[] body = note.getBytes(StandardCharsets.UTF_8);
+            if (body.length > noteBlobStore.getInlineMaxBytes()) {
+                searchText = noteBlobStore.searchText(note);
+                bodyRef = noteBlobStore.put(body);
+                bodySize = Integer.toString(body.length);
+                note = null;
+            }
+        }
+        copy.write(Long.toString(record));
+        copy.write(',');
+        writeCsvField(copy, title);
+        copy.write(',');
+        writeCsvField(copy, note);
+        copy.write(',');
+        writeCsvField(copy, bodyRef);
+        copy.write(',');
+        writeCsvField(copy, bodySize);
+        copy.write(',');
+        writeCsvField(copy, searchText);
+        copy.write('\n');
+    }
+
+    private static void validateField(String name, String value) {
+        if (value != null && value.indexOf('\0') >= 0) {
+            throw new IllegalArgumentException("Field " + name + " contains a NUL character");
+        }
+    }
+
+    private static void writeCsvField(Writer out, String value) throws IOException {
+        if (value != null) {
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        }
+    }
+
+    /**
+     * Move the staging table into notes in input order, recording each note's first revision.
+     * Change notifications are suppressed for the insert and replaced by a single "bulk"
+     * notification, which only wakes change feed followers: they read the new rows from the feed.
+     * Ids are taken from notes_seq the way Hibernate's pooled-lo optimizer takes them, a whole
+     * block of increment_by ids per nextval, so they never collide with blocks handed out to
+     * the application and none are wasted.
+     * Blobs written during the upload are touched first, so the blob sweep leaves them alone
+     * however long the upload took.
+     */
+    private void insertFromStaging(Connection connection, NotesImportProgress progress) throws SQLException {
+        long count;
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet result = statement.executeQuery(
+                    "SELECT DISTINCT body_ref FROM notes_import WHERE body_ref IS NOT NULL")) {
+                while (result.next()) {
+                    if (!noteBlobStore.touch(result.getString(1))) {
+                        throw new IllegalStateException("Large note body " + result.getString(1)
+                                + " was removed from the blob store during the import; retry the import");
+                    }
+                }
+            }
+            statement.execute("SELECT set_config('notes.notify_suppressed', 'on', true)");
+            long blockSize;
+            try (ResultSet result = statement.executeQuery("SELECT increment_by FROM pg_sequences "
+                    + "WHERE schemaname = current_schema() AND sequencename = 'notes_seq'")) {
+                result.next();
+                blockSize = result.getLong(1);
+            }
+            // block k holds the ids of rows k * blockSize .. (k + 1) * blockSize - 1, in input order
+            try (ResultSet result = statement.executeQuery("""
+                    WITH staged AS (
+                        SELECT title, note, body_ref, body_size, search_text, row_number() OVER (ORDER BY line) - 1 AS n
+                        FROM notes_import
+                    ), blocks AS (
+                        SELECT row_number() OVER (ORDER BY first_id) - 1 AS block, first_id
+                        FROM (
+                            SELECT nextval('notes_seq') AS first_id
+                            FROM generate_series(1, (SELECT (count(*) + %1$d - 1) / %1$d FROM notes_import))
+                        ) b
+                    ), inserted AS (
+                        INSERT INTO notes (id, title, note, body_ref, body_size, body_vector, timestamp, updated_at, version)
+                        SELECT b.first_id + mod(s.n, %1$d), s.title, s.note, s.body_ref, s.body_size,
+                            to_tsvector('english', s.search_text), clock_timestamp(), clock_timestamp(), 0
+                        FROM staged s
+                        JOIN blocks b ON b.block = s.n / %1$d
+                        ORDER BY s.n
+                        RETURNING id, title, note, body_ref, body_size
+                    ), revisions AS (
+                        INSERT INTO note_revisions (note_id, version, title, created_at, note, body_ref, body_size)
+                        SELECT id, 0, title, now(), note, body_ref, body_size FROM inserted
+                    )
+                    SELECT count(*) FROM inserted
+                    """.formatted(blockSize))) {
+                result.next();
+                count = result.getLong(1);
+            }
+            statement.execute("SELECT pg_notify('" + NotesChangeFeed.CHANNEL + "', '{\"bulk\":true}')");
+        }
+        connection.commit();
+
+        progress.setNotesImported(count);
+    }
+
+    private void dropStaging(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS notes_import");
+            connection.commit();
+        } catch (SQLException e) {
+            logger.warn("Failed to drop notes import staging table", e);
+        }
+    }
+
+    /**
+     * Counts request bytes for progress reporting
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final NotesImportProgress progress;
+        private long count;
+
+        CountingInputStream(InputStream in, NotesImportProgress progress) {
+            super(in);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                progress.setBytesRead(++count);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+                progress.setBytesRead(count);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package dsa.personal.notespsqlv04;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated notes listing.
+ * nextCursor is the value to pass as "after" for the following page, or null on the last page.
+ */
+public class NotesPage {
+    private List<Notes> notes;
+    private int size;
+    private Long nextCursor;
+
+    public NotesPage() {
+    }
+
+    public NotesPage(List<Notes> notes, Long nextCursor) {
+        this.notes = notes;
+        this.size = notes.size();
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Notes> getNotes() {
+        return notes;
+    }
+    public void setNotes(List<Notes> notes) {
+        this.notes = notes;
+    }
+    public int getSize() {
+        return size;
+    }
+    public void setSize(int size) {
+        this.size = size;
+    }
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+    public void setNextCursor(Long nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    @Override
+    public String toString() {
+        return "NotesPage [size=" + size + ", nextCursor=" + nextCursor + "]";
+    }
+
+}
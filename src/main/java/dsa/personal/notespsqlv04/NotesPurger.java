@@ -0,0 +1,76 @@
+package dsa.personal.notespsqlv04;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.function.IntSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hard-deletes soft-deleted notes in the background.
+ * Runs on the off-peak schedule notes.purge.cron and deletes in short transactions of
+ * notes.purge.batch-size rows with a pause in between, so a large cleanup never holds
+ * many row locks or writes a burst of WAL. Each run stops after notes.purge.max-duration;
+ * whatever is left is picked up by the next run. Tombstones are kept for the change feed.
+ * The revision history of purged notes is deleted by the same statement.
+ * Compressed bodies no longer referenced by any note are removed the same way afterwards.
+ */
+@Component
+public class NotesPurger {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotesPurger.class);
+
+    @Autowired
+    private NotesRepository notesRepository;
+
+    @Autowired
+    private NoteBodyRepository noteBodyRepository;
+
+    @Value("${notes.purge.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${notes.purge.batch-pause:500ms}")
+    private Duration batchPause;
+
+    @Value("${notes.purge.max-duration:30m}")
+    private Duration maxDuration;
+
+    @Value("${notes.bodies.sweep-grace:1h}")
+    private Duration bodyGrace;
+
+    @Scheduled(cron = "${notes.purge.cron:0 */15 1-5 * * *}")
+    public void purge() {
+        long deadline = System.currentTimeMillis() + maxDuration.toMillis();
+        long notes = inBatches(() -> notesRepository.purgeDeleted(batchSize), deadline);
+        Timestamp bodiesBefore = new Timestamp(System.currentTimeMillis() - bodyGrace.toMillis());
+        long bodies = inBatches(() -> noteBodyRepository.deleteUnreferenced(bodiesBefore, batchSize), deadline);
+
+        if (notes > 0 || bodies > 0) {
+            logger.info("Purged {} soft-deleted notes with their revisions and {} unreferenced note bodies",
+                    notes, bodies);
+        }
+    }
+
+    private long inBatches(IntSupplier batch, long deadline) {
+        long total = 0;
+        int purged;
+        do {
+            purged = batch.getAsInt();
+            total += purged;
+            if (purged == batchSize) {
+                try {
+                    Thread.sleep(batchPause.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } while (purged == batchSize && System.currentTimeMillis() < deadline);
+        return total;
+    }
+}
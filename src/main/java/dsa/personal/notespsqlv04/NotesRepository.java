@@ -1,7 +1,252 @@
 package dsa.personal.notespsqlv04;
 
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.QueryHint;
+
+public interface NotesRepository extends CrudRepository<Notes, Long>, PagingAndSortingRepository<Notes, Long> {
+
+    /**
+     * Keyset page: notes with an id greater than the cursor, in id order.
+     * Seeks on the primary key index, so the cost does not grow with the cursor position.
+     */
+    List<Notes> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * Same keyset page as findByIdGreaterThanOrderByIdAsc, without note bodies
+     */
+    List<NoteSummary> findSummariesByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    Optional<NoteSummary> findSummaryById(Long id);
+
+    /**
+     * The given notes without their bodies, in no particular order, for multi-gets that exclude "note"
+     */
+    List<NoteSummary> findSummariesByIdIn(Collection<Long> ids);
+
+    Optional<NoteBody> findBodyById(Long id);
+
+    boolean existsByBodyRef(String bodyRef);
+
+    /**
+     * Set the full-text vectors of bodies stored outside the notes table from their plain text, in one
+     * statement; a null text clears the vector, so the generated search_vector falls back to note.
+     * Rows whose vector does not change are not rewritten.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            UPDATE notes n SET body_vector = t.vector
+            FROM (
+                SELECT id, to_tsvector('english', text) AS vector
+                FROM unnest(CAST(:ids AS bigint[]), CAST(:texts AS text[])) AS u(id, text)
+            ) t
+            WHERE n.id = t.id AND n.body_vector IS DISTINCT FROM t.vector
+            """, nativeQuery = true)
+    int updateBodyVectors(@Param("ids") Long[] ids, @Param("texts") String[] texts);
+
+    /**
+     * Notes with an offloaded or compressed body that has no full-text vector yet (written before
+     * body_vector existed)
+     */
+    @Query(value = """
+            SELECT id, note, body_ref AS bodyRef, body_hash AS bodyHash, version FROM notes
+            WHERE body_vector IS NULL AND (body_ref IS NOT NULL OR body_hash IS NOT NULL) AND deleted_at IS NULL
+            ORDER BY id LIMIT :limit
+            """, nativeQuery = true)
+    List<NoteBody> findBodiesWithoutVector(@Param("limit") int limit);
+
+    /**
+     * Same keyset page as findByIdGreaterThanOrderByIdAsc, but only ids and versions
+     */
+    List<NoteVersion> findVersionsByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    @Query("SELECT n.version FROM Notes n WHERE n.id = :id")
+    Optional<Integer> findVersionById(@Param("id") Long id);
+
+    /**
+     * Keyset page of ids and titles within an id range, used to rebuild the search index
+     */
+    List<NoteTitle> findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(Long afterId, Long toId, Pageable pageable);
+
+    /**
+     * Ids and titles of the given notes, used to apply change feed updates to the search index
+     */
+    List<NoteTitle> findTitlesByIdIn(Collection<Long> ids);
+
+    /**
+     * Title prefix lookup, used for typeahead while the search index is unavailable
+     */
+    List<NoteTitle> findByTitleStartingWithIgnoreCaseOrderByTitleAsc(String prefix, Pageable pageable);
+
+    /**
+     * Set the trigram similarity threshold used by the % operator for the current transaction only
+     */
+    @Query(value = "SELECT set_config('pg_trgm.similarity_threshold', :threshold, true)", nativeQuery = true)
+    String setSimilarityThreshold(@Param("threshold") String threshold);
+
+    /**
+     * Titles similar to the given text, most similar first.
+     * The % operator is answered by the trigram GIN index and honours pg_trgm.similarity_threshold.
+     */
+    @Query(value = """
+            SELECT n.id AS id, n.title AS title, similarity(n.title, :title) AS similarity
+            FROM notes n
+            WHERE n.title % :title AND n.deleted_at IS NULL
+            ORDER BY similarity DESC, n.id
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<NoteTitleMatch> findSimilarTitles(@Param("title") String title, @Param("limit") int limit);
+
+    /**
+     * Notes created/updated and notes deleted after the (changeXid, id) cursor, in transaction id order.
+     * Only changes of transactions older than every transaction still in flight are returned (the
+     * snapshot's xmin horizon), so a change can never commit behind the last one returned.
+     * Both branches seek on their (change_xid, id) indexes, see db/notes-changes.sql.
+     */
+    @Query(value = """
+            WITH horizon AS (
+                SELECT CAST(CAST(pg_snapshot_xmin(pg_current_snapshot()) AS text) AS bigint) AS xid
+            )
+            SELECT c.id AS id, c.change_xid AS changeXid, c.changed_at AS changedAt, c.deleted AS deleted
+            FROM (
+                SELECT n.id AS id, n.change_xid AS change_xid, n.updated_at AS changed_at, false AS deleted
+                FROM notes n, horizon h
+                WHERE (n.change_xid, n.id) > (:sinceXid, :sinceId) AND n.change_xid < h.xid
+                  AND n.deleted_at IS NULL
+                UNION ALL
+                SELECT t.note_id AS id, t.change_xid AS change_xid, t.deleted_at AS changed_at, true AS deleted
+                FROM note_tombstones t, horizon h
+                WHERE (t.change_xid, t.note_id) > (:sinceXid, :sinceId) AND t.change_xid < h.xid
+            ) c
+            ORDER BY c.change_xid, c.id
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<NoteChange> findChanges(@Param("sinceXid") long sinceXid,
+                                 @Param("sinceId") long sinceId,
+                                 @Param("limit") int limit);
+
+    /**
+     * Oldest transaction id still in flight: every change from now on is made by this transaction or a later one
+     */
+    @Query(value = "SELECT CAST(CAST(pg_snapshot_xmin(pg_current_snapshot()) AS text) AS bigint)", nativeQuery = true)
+    long findChangesHorizon();
+
+    /**
+     * All notes whose id is in the array, in no particular order; one primary key index lookup per id
+     */
+    @Query(value = "SELECT * FROM notes WHERE id = ANY(:ids) AND deleted_at IS NULL", nativeQuery = true)
+    List<Notes> findAllByIdAny(@Param("ids") Long[] ids);
+
+    /**
+     * Soft-delete the given notes and write their tombstones in one statement.
+     * Returns the ids actually deleted; missing and already deleted notes are skipped.
+     */
+    @Transactional
+    @Query(value = """
+            WITH deleted AS (
+                UPDATE notes SET deleted_at = :deletedAt
+                WHERE id = ANY(:ids) AND deleted_at IS NULL
+                RETURNING id
+            ), tombstones AS (
+                INSERT INTO note_tombstones (note_id, deleted_at)
+                SELECT id, :deletedAt FROM deleted
+                ON CONFLICT (note_id) DO UPDATE SET deleted_at = EXCLUDED.deleted_at
+            )
+            SELECT id FROM deleted
+            """, nativeQuery = true)
+    List<Long> softDeleteByIdAny(@Param("ids") Long[] ids, @Param("deletedAt") Timestamp deletedAt);
+
+    /**
+     * Hard-delete up to "limit" soft-deleted notes, oldest deletion first, with their revision history,
+     * and return how many notes were deleted.
+     * Rows locked by a concurrent purge on another node are skipped rather than waited for.
+     */
+    @Transactional
+    @Query(value = """
+            WITH purged AS (
+                DELETE FROM notes WHERE id IN (
+                    SELECT id FROM notes
+                    WHERE deleted_at IS NOT NULL
+                    ORDER BY deleted_at
+                    LIMIT :limit
+                    FOR UPDATE SKIP LOCKED
+                )
+                RETURNING id
+            ), revisions AS (
+                DELETE FROM note_revisions WHERE note_id IN (SELECT id FROM purged)
+            )
+            SELECT CAST(count(*) AS integer) FROM purged
+            """, nativeQuery = true)
+    int purgeDeleted(@Param("limit") int limit);
+
+    @Query("SELECT MIN(n.id) FROM Notes n")
+    Long findMinId();
+
+    @Query("SELECT MAX(n.id) FROM Notes n")
+    Long findMaxId();
+
+    /**
+     * All notes in id order as a lazily fetched stream.
+     * Must be consumed and closed inside a transaction: with autocommit off the fetch size
+     * makes PgJDBC read through a server-side cursor instead of buffering the whole result.
+     */
+    @QueryHints({
+        @QueryHint(name = "org.hibernate.fetchSize", value = "" + NotesService.EXPORT_FETCH_SIZE),
+        @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    @Query("SELECT n FROM Notes n ORDER BY n.id")
+    Stream<Notes> streamAllOrderById();
+
+    /**
+     * Full-text search over title and body using the GIN-indexed search_vector column.
+     * Results are ordered by rank, then id, and paged with a (rank, id) keyset cursor.
+     * Snippets are only computed for the rows of the returned page, and are empty for bodies stored
+     * outside the notes table (see headline).
+     */
+    @Query(value = """
+            SELECT n.id AS id, n.title AS title, n.timestamp AS timestamp, m.rank AS rank,
+                   n.body_ref AS bodyRef, n.body_hash AS bodyHash,
+                   ts_headline('english', coalesce(n.note, ''), m.q,
+                               'StartSel=<b>, StopSel=</b>, MaxFragments=2, MaxWords=20, MinWords=5') AS snippet
+            FROM (
+                SELECT r.id, r.rank, r.q
+                FROM (
+                    SELECT s.id AS id, ts_rank(s.search_vector, q) AS rank, q
+                    FROM notes s, websearch_to_tsquery('english', :query) q
+                    WHERE s.search_vector @@ q AND s.deleted_at IS NULL
+                ) r
+                WHERE (r.rank, r.id) < (CAST(:afterRank AS real), CAST(:afterId AS bigint))
+                ORDER BY r.rank DESC, r.id DESC
+                LIMIT :limit
+            ) m
+            JOIN notes n ON n.id = m.id
+            ORDER BY m.rank DESC, m.id DESC
+            """, nativeQuery = true)
+    List<NoteSearchHit> search(@Param("query") String query,
+                               @Param("afterRank") float afterRank,
+                               @Param("afterId") long afterId,
+                               @Param("limit") int limit);
 
-public interface NotesRepository extends CrudRepository<Notes, Long> {
+    /**
+     * Highlighted snippet of a search match in the given text, as search computes it for inline bodies
+     */
+    @Query(value = """
+            SELECT ts_headline('english', :text, websearch_to_tsquery('english', :query),
+                               'StartSel=<b>, StopSel=</b>, MaxFragments=2, MaxWords=20, MinWords=5')
+            """, nativeQuery = true)
+    String headline(@Param("text") String text, @Param("query") String query);
 
 }
@@ -0,0 +1,120 @@
+package dsa.personal.notespsqlv04;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of serialized JSON bodies for single notes, held off-heap in direct ByteBuffers.
+ * Entries are tagged with the note version; writes leave a version marker so that a reader
+ * that loaded an older version concurrently cannot put it back. Bounded by total bytes and
+ * entry count with least-recently-used eviction, and entries expire after a TTL so changes
+ * made by other nodes are picked up eventually.
+ */
+@Component
+public class NotesResponseCache {
+
+    private static final class Entry {
+        final int version;
+        final ByteBuffer body;  // null for a marker left by invalidate()
+        final long expiresAt;
+
+        Entry(int version, ByteBuffer body, long expiresAt) {
+            this.version = version;
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+
+        int size() {
+            return body == null ? 0 : body.capacity();
+        }
+    }
+
+    @Value("${notes.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${notes.cache.max-entry-bytes:1048576}")
+    private int maxEntryBytes;
+
+    @Value("${notes.cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${notes.cache.ttl:60s}")
+    private Duration ttl;
+
+    // access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes = 0;
+
+    /**
+     * Cached JSON for the note, or null if it is not cached.
+     * The body is a read-only view of the off-heap entry, not a copy; it stays valid after eviction.
+     */
+    public NoteJson get(Long id) {
+        synchronized (entries) {
+            Entry entry = entries.get(id);
+            if (entry == null || entry.body == null) {
+                return null;
+            }
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                remove(id);
+                return null;
+            }
+            return new NoteJson(id, entry.version, entry.body.asReadOnlyBuffer());
+        }
+    }
+
+    /**
+     * Cache the JSON of a note version unless a newer version is already known
+     */
+    public void put(Long id, int version, byte[] json) {
+        if (json.length > maxEntryBytes) {
+            return;
+        }
+        ByteBuffer body = ByteBuffer.allocateDirect(json.length);
+        body.put(json).flip();
+
+        synchronized (entries) {
+            Entry existing = entries.get(id);
+            if (existing != null && existing.expiresAt >= System.currentTimeMillis()
+                    && (version < existing.version || (version == existing.version && existing.body != null))) {
+                return;
+            }
+            remove(id);
+            entries.put(id, new Entry(version, body, System.currentTimeMillis() + ttl.toMillis()));
+            totalBytes += body.capacity();
+            evict();
+        }
+    }
+
+    /**
+     * Drop the cached JSON after a write; only versions at or above minVersion may be cached again
+     */
+    public void invalidate(Long id, int minVersion) {
+        synchronized (entries) {
+            remove(id);
+            entries.put(id, new Entry(minVersion, null, System.currentTimeMillis() + ttl.toMillis()));
+            evict();
+        }
+    }
+
+    private void remove(Long id) {
+        Entry removed = entries.remove(id);
+        if (removed != null) {
+            totalBytes -= removed.size();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+        while ((totalBytes > maxBytes || entries.size() > maxEntries) && eldest.hasNext()) {
+            totalBytes -= eldest.next().getValue().size();
+            eldest.remove();
+        }
+    }
+}
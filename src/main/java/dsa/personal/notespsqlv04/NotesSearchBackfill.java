@@ -0,0 +1,40 @@
+package dsa.personal.notespsqlv04;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Indexes for full-text search the bodies stored outside the notes table (offloaded or compressed)
+ * before body_vector existed, in short transactions on startup. Bodies written since are indexed
+ * as they are written, so this only has work to do once after upgrading.
+ * Runs after the search index (order 4).
+ */
+@Component
+@Order(4)
+public class NotesSearchBackfill implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotesSearchBackfill.class);
+
+    private static final int BATCH_SIZE = 100;
+
+    @Autowired
+    private NotesService notesService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long total = 0;
+        int indexed;
+        do {
+            indexed = notesService.indexBodiesWithoutVector(BATCH_SIZE);
+            total += indexed;
+        } while (indexed == BATCH_SIZE);
+        if (total > 0) {
+            logger.info("Indexed {} stored note bodies for full-text search", total);
+        }
+    }
+}
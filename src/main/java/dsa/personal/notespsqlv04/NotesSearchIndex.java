@@ -0,0 +1,411 @@
+package dsa.personal.notespsqlv04;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Embedded Lucene index over note titles for low-latency typeahead.
+ * The index lives on local disk in a memory-mapped directory and follows the notes change feed:
+ * a single follower thread, woken by notes_changes notifications and polling every
+ * notes.changes.poll-interval, applies the changes made on any node and records how far it got
+ * in the commit user data. Commits run every notes.search.commit-interval, so after a crash the
+ * index catches up from its last commit instead of losing updates.
+ * Readers are refreshed near-real-time from the IndexWriter, so new titles show up within a second.
+ * While the index is rebuilding (or failed to open) isAvailable() is false and callers use the database.
+ * Runs after the bootstrap loaders (order 3) and rebuilds if the index has no change feed position.
+ */
+@Component
+@Order(3)
+public class NotesSearchIndex implements ApplicationRunner, PgNotificationListener.NotificationHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotesSearchIndex.class);
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_TITLE = "title";
+    private static final String COMMIT_CHANGES_CURSOR = "changesCursor";
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    private static final int CATCH_UP_PAGE_SIZE = 1000;
+
+    @Autowired
+    private NotesRepository notesRepository;
+
+    @Autowired
+    private PgNotificationListener notificationListener;
+
+    @Value("${notes.search.index-path:data/notes-index}")
+    private String indexPath;
+
+    @Value("${notes.search.rebuild-threads:4}")
+    private int rebuildThreads;
+
+    @Value("${notes.search.commit-interval:30s}")
+    private Duration commitInterval;
+
+    @Value("${notes.changes.poll-interval:5s}")
+    private Duration pollInterval;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private final AtomicBoolean catchUpRequested = new AtomicBoolean();
+    private volatile boolean available = false;
+
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+    // runs catch-ups, rebuilds and commits, one at a time
+    private ScheduledExecutorService follower;
+    // change feed position everything up to which is in the index; follower thread only, null while rebuilding
+    private NoteChangeCursor cursor;
+
+    @PostConstruct
+    public void open() throws IOException {
+        directory = new MMapDirectory(Paths.get(indexPath));
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        writer = new IndexWriter(directory, config);
+        searcherManager = new SearcherManager(writer, null);
+
+        // Reopen readers at most 1s after a change, or 25ms when a caller waits for a generation
+        reopenThread = new ControlledRealTimeReopenThread<>(writer, searcherManager, 1.0, 0.025);
+        reopenThread.setName("notes-index-refresh");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+
+        follower = Executors.newSingleThreadScheduledExecutor();
+        notificationListener.subscribe(NotesChangeFeed.CHANNEL, this);
+        logger.info("Opened notes search index at: {}", indexPath);
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        follower.shutdown();
+        if (!follower.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("Notes search index follower still busy, closing the index anyway");
+        }
+        reopenThread.close();
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    /**
+     * Catch up from the change feed position of the last commit, or rebuild if there is none
+     * (first start, lost index directory, or a rebuild that never completed)
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        String committed = null;
+        Iterable<Map.Entry<String, String>> commitData = writer.getLiveCommitData();
+        if (commitData != null) {
+            for (Map.Entry<String, String> entry : commitData) {
+                if (COMMIT_CHANGES_CURSOR.equals(entry.getKey())) {
+                    committed = entry.getValue();
+                }
+            }
+        }
+        if (committed != null) {
+            NoteChangeCursor from = NoteChangeCursor.parse(committed);
+            follower.execute(() -> cursor = from);
+            available = true;
+            logger.info("Notes search index has {} documents, catching up from change feed position {}",
+                    writer.getDocStats().numDocs, from);
+            requestCatchUp();
+        } else {
+            logger.info("Notes search index has no change feed position, rebuilding");
+            startRebuild();
+        }
+        follower.scheduleWithFixedDelay(this::requestCatchUp,
+                pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        follower.scheduleWithFixedDelay(this::commit,
+                commitInterval.toMillis(), commitInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Start an asynchronous rebuild of the whole index.
+     * Returns false if a rebuild is already running.
+     */
+    public boolean startRebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        available = false;
+        follower.execute(this::rebuild);
+        return true;
+    }
+
+    @Override
+    public void onNotification(String payload) {
+        requestCatchUp();
+    }
+
+    /**
+     * Notifications sent while the listener was down are lost, but the changes are in the feed
+     */
+    @Override
+    public void onReconnect() {
+        requestCatchUp();
+    }
+
+    /**
+     * Typeahead over titles: every token must match, the last one as a prefix
+     */
+    public List<NoteTitle> typeahead(String text, int limit) throws IOException {
+        Query query = buildTypeaheadQuery(text);
+        if (query == null) {
+            return List.of();
+        }
+
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(query, limit);
+            StoredFields storedFields = searcher.storedFields();
+            List<NoteTitle> results = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                Document doc = storedFields.document(scoreDoc.doc);
+                results.add(new NoteTitle(Long.valueOf(doc.get(FIELD_ID)), doc.get(FIELD_TITLE)));
+            }
+            return results;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private Query buildTypeaheadQuery(String text) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream(FIELD_TITLE, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(term.toString());
+            }
+            stream.end();
+        }
+        if (tokens.isEmpty()) {
+            return null;
+        }
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            builder.add(new TermQuery(new Term(FIELD_TITLE, tokens.get(i))), BooleanClause.Occur.MUST);
+        }
+        builder.add(new PrefixQuery(new Term(FIELD_TITLE, tokens.get(tokens.size() - 1))), BooleanClause.Occur.MUST);
+        return builder.build();
+    }
+
+    private void index(NoteTitle note) {
+        try {
+            writer.updateDocument(new Term(FIELD_ID, note.getId().toString()), toDocument(note));
+        } catch (IOException e) {
+            logger.error("Failed to index note: " + note.getId(), e);
+        }
+    }
+
+    private void remove(Long id) {
+        try {
+            writer.deleteDocuments(new Term(FIELD_ID, id.toString()));
+        } catch (IOException e) {
+            logger.error("Failed to remove note from index: " + id, e);
+        }
+    }
+
+    private Document toDocument(NoteTitle note) {
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, note.getId().toString(), Field.Store.YES));
+        doc.add(new TextField(FIELD_TITLE, note.getTitle() == null ? "" : note.getTitle(), Field.Store.YES));
+        return doc;
+    }
+
+    private void requestCatchUp() {
+        if (catchUpRequested.compareAndSet(false, true)) {
+            try {
+                follower.execute(this::catchUp);
+            } catch (RuntimeException e) {
+                // shutting down
+                catchUpRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Apply the change feed from the cursor to its current end. Titles are read back from the
+     * table, so applying a change twice is harmless; the cursor only advances past applied changes.
+     */
+    private void catchUp() {
+        catchUpRequested.set(false);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            List<NoteChange> changes;
+            do {
+                changes = notesRepository.findChanges(cursor.getXid(), cursor.getId(), CATCH_UP_PAGE_SIZE);
+                apply(changes);
+                if (!changes.isEmpty()) {
+                    cursor = NoteChangeCursor.of(changes.get(changes.size() - 1));
+                    writer.setLiveCommitData(Map.of(COMMIT_CHANGES_CURSOR, cursor.toString()).entrySet());
+                }
+            } while (changes.size() == CATCH_UP_PAGE_SIZE);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to apply note changes to the search index, retrying on the next poll", e);
+        }
+    }
+
+    private void apply(List<NoteChange> changes) {
+        Set<Long> updated = new LinkedHashSet<>();
+        for (NoteChange change : changes) {
+            if (change.getDeleted()) {
+                remove(change.getId());
+            } else {
+                updated.add(change.getId());
+            }
+        }
+        if (updated.isEmpty()) {
+            return;
+        }
+        Map<Long, NoteTitle> titles = new HashMap<>();
+        notesRepository.findTitlesByIdIn(updated).forEach(title -> titles.put(title.getId(), title));
+        for (Long id : updated) {
+            NoteTitle title = titles.get(id);
+            if (title != null) {
+                index(title);
+            } else {
+                // deleted since; its tombstone is further along the feed
+                remove(id);
+            }
+        }
+    }
+
+    private void commit() {
+        try {
+            if (writer.hasUncommittedChanges()) {
+                writer.commit();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to commit notes search index", e);
+        }
+    }
+
+    /**
+     * Re-index the whole table: the id range is split across worker threads,
+     * each paging through its slice by id and writing to the shared IndexWriter.
+     * Then the change feed is applied from where it stood before the slices were read,
+     * which removes notes deleted while a slice was being indexed.
+     */
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        ExecutorService workers = Executors.newFixedThreadPool(rebuildThreads);
+        try {
+            // an index committed before the rebuild completes (e.g. on shutdown) must not claim a position
+            cursor = null;
+            writer.setLiveCommitData(Map.<String, String>of().entrySet());
+            NoteChangeCursor head = new NoteChangeCursor(notesRepository.findChangesHorizon(), 0);
+            writer.deleteAll();
+
+            long total = 0;
+            Long minId = notesRepository.findMinId();
+            Long maxId = notesRepository.findMaxId();
+            if (minId != null) {
+                long span = (maxId - minId) / rebuildThreads + 1;
+                List<Future<Long>> slices = new ArrayList<>();
+                for (int i = 0; i < rebuildThreads; i++) {
+                    final long afterId = minId - 1 + i * span;
+                    final long toId = Math.min(afterId + span, maxId);
+                    if (afterId >= maxId) {
+                        break;
+                    }
+                    slices.add(workers.submit(() -> indexSlice(afterId, toId)));
+                }
+                for (Future<Long> slice : slices) {
+                    total += slice.get();
+                }
+            }
+
+            cursor = head;
+            catchUp();
+            writer.commit();
+            searcherManager.maybeRefresh();
+            available = true;
+            logger.info("Rebuilt notes search index with {} notes in {} ms",
+                    total, System.currentTimeMillis() - started);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Notes search index rebuild interrupted", e);
+        } catch (IOException | ExecutionException | RuntimeException e) {
+            logger.error("Failed to rebuild notes search index", e);
+        } finally {
+            workers.shutdownNow();
+            rebuilding.set(false);
+        }
+    }
+
+    private long indexSlice(long afterId, long toId) {
+        long count = 0;
+        long cursor = afterId;
+        while (true) {
+            List<NoteTitle> page = notesRepository.findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(
+                    cursor, toId, PageRequest.of(0, REBUILD_PAGE_SIZE));
+            if (page.isEmpty()) {
+                return count;
+            }
+            page.forEach(this::index);
+            count += page.size();
+            cursor = page.get(page.size() - 1).getId();
+        }
+    }
+}
@@ -1,34 +1,1033 @@
 package dsa.personal.notespsqlv04;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
 
 @Service
 public class NotesService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int EXPORT_FETCH_SIZE = 500;
+    public static final int MAX_BULK_SIZE = 5000;
+    public static final int DEFAULT_LOOKUP_LIMIT = 10;
+    public static final int MAX_LOOKUP_LIMIT = 50;
+    public static final float DEFAULT_SIMILARITY_THRESHOLD = 0.3f;
+    public static final Set<String> NOTE_FIELDS = Set.of("id", "title", "note", "bodyRef", "bodySize",
+            "timestamp", "updatedAt", "version");
+
+    private static final Logger logger = LoggerFactory.getLogger(NotesService.class);
+
     @Autowired
     private NotesRepository notesRepository;
 
-    public List<Notes> getAllNotes() {
-        List<Notes> allNotes = new ArrayList<Notes>();
-        notesRepository.findAll().forEach(allNotes::add);
-        return allNotes;
+    @Autowired
+    private NotesSearchIndex notesSearchIndex;
+
+    @Autowired
+    private NotesResponseCache notesResponseCache;
+
+    @Autowired
+    private NoteBlobStore noteBlobStore;
+
+    @Autowired
+    private NoteBodyStore noteBodyStore;
+
+    @Autowired
+    private NoteRevisionStore noteRevisionStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    /**
+     * Get one page of notes ordered by id, starting after the given cursor.
+     * Fetches one extra row to know whether another page exists.
+     * Unless the fieldset includes "note", bodies are not read (they stay null).
+     */
+    public NotesPage getNotesPage(Long after, Integer size, Set<String> fields) {
+        int pageSize = resolvePageSize(size);
+        long cursor = after == null ? 0L : after;
+
+        List<Notes> notes;
+        if (fields == null || fields.contains("note")) {
+            notes = notesRepository.findByIdGreaterThanOrderByIdAsc(cursor, PageRequest.of(0, pageSize + 1));
+            noteBodyStore.loadBodies(notes);
+        } else {
+            notes = notesRepository.findSummariesByIdGreaterThanOrderByIdAsc(cursor, PageRequest.of(0, pageSize + 1))
+                    .stream()
+                    .map(NotesService::fromSummary)
+                    .collect(Collectors.toList());
+        }
+        Long nextCursor = null;
+        if (notes.size() > pageSize) {
+            notes = notes.subList(0, pageSize);
+            nextCursor = notes.get(pageSize - 1).getId();
+        }
+        return new NotesPage(notes, nextCursor);
+    }
+
+    /**
+     * ETag of the page getNotesPage would return, computed from ids and versions only
+     */
+    public String getNotesPageETag(Long after, Integer size, Set<String> fields) {
+        int pageSize = resolvePageSize(size);
+        long cursor = after == null ? 0L : after;
+
+        List<NoteVersion> versions = notesRepository.findVersionsByIdGreaterThanOrderByIdAsc(cursor, PageRequest.of(0, pageSize + 1));
+        Long nextCursor = null;
+        if (versions.size() > pageSize) {
+            versions = versions.subList(0, pageSize);
+            nextCursor = versions.get(pageSize - 1).getId();
+        }
+        return listingETag(versions, nextCursor, fields);
+    }
+
+    /**
+     * ETag of a loaded page; changes whenever a note on the page changes, appears, disappears,
+     * or the page stops or starts being the last one
+     */
+    public String getNotesPageETag(NotesPage page, Set<String> fields) {
+        List<NoteVersion> versions = page.getNotes().stream()
+                .map(n -> new NoteVersion(n.getId(), n.getVersion()))
+                .collect(Collectors.toList());
+        return listingETag(versions, page.getNextCursor(), fields);
+    }
+
+    /**
+     * Strong ETag of a single note, derived from its id and version; empty if the note does not exist
+     */
+    public Optional<String> getNoteETag(Long id, Set<String> fields) {
+        return notesRepository.findVersionById(id).map(version -> noteETag(id, version, fields));
+    }
+
+    public static String noteETag(Long id, int version) {
+        return noteETag(id, version, null);
+    }
+
+    /**
+     * ETag of a note representation; a sparse fieldset is a different representation, so it is part of the tag
+     */
+    public static String noteETag(Long id, int version, Set<String> fields) {
+        String tag = id + "-" + version;
+        if (fields != null) {
+            tag += "+" + String.join(",", fields);
+        }
+        return "\"" + tag + "\"";
+    }
+
+    /**
+     * Parse a "fields" request parameter into a sorted set of note fields; null means all fields
+     */
+    public static Set<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        Set<String> parsed = new TreeSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!NOTE_FIELDS.contains(name)) {
+                throw new IllegalArgumentException("Unknown field: " + name + ". Allowed fields: " + new TreeSet<>(NOTE_FIELDS));
+            }
+            parsed.add(name);
+        }
+        return parsed;
     }
 
+    /**
+     * Jackson filter that limits serialized notes to the given fields (all fields if null)
+     */
+    public static FilterProvider fieldsFilter(Set<String> fields) {
+        SimpleBeanPropertyFilter filter = fields == null
+                ? SimpleBeanPropertyFilter.serializeAll()
+                : SimpleBeanPropertyFilter.filterOutAllExcept(fields);
+        return new SimpleFilterProvider().addFilter(Notes.FIELDS_FILTER, filter);
+    }
+
+    /**
+     * Notes changed or deleted since the cursor, in commit-safe order.
+     * The cursor is a NoteChangeCursor of the last change seen (null to start from the beginning).
+     * Changes of transactions still in flight hold back the feed until they finish, so a change can
+     * never commit behind the returned cursor; a long write transaction delays the feed, it loses nothing.
+     */
+    public NoteChangesPage getChanges(String since, Integer size) {
+        int pageSize = resolvePageSize(size);
+        NoteChangeCursor cursor = since != null ? NoteChangeCursor.parse(since) : NoteChangeCursor.START;
+
+        List<NoteChange> changes = notesRepository.findChanges(cursor.getXid(), cursor.getId(), pageSize + 1);
+        boolean hasMore = changes.size() > pageSize;
+        if (hasMore) {
+            changes = changes.subList(0, pageSize);
+        }
+        if (!changes.isEmpty()) {
+            cursor = NoteChangeCursor.of(changes.get(changes.size() - 1));
+        }
+        return new NoteChangesPage(changes, cursor.toString(), hasMore);
+    }
+
+    /**
+     * Cursor at the current end of the change feed: every change made from now on comes after it
+     */
+    public NoteChangeCursor getChangesHead() {
+        return new NoteChangeCursor(notesRepository.findChangesHorizon(), 0);
+    }
+
+    private static Notes fromSummary(NoteSummary summary) {
+        Notes note = new Notes(summary.getTitle(), null);
+        note.setId(summary.getId());
+        note.setBodyRef(summary.getBodyRef());
+        note.setBodySize(summary.getBodySize());
+        note.setTimestamp(summary.getTimestamp());
+        note.setUpdatedAt(summary.getUpdatedAt());
+        note.setVersion(summary.getVersion());
+        return note;
+    }
+
+    /**
+     * Versions of a note named by an If-Match header: one ETag or a list of them, where entries for
+     * other notes are ignored. Returns null for "*", which matches any current version.
+     * Throws if no entry names a version of this note.
+     */
+    public static Set<Integer> versionsFromIfMatch(Long id, String ifMatch) {
+        Set<Integer> versions = new TreeSet<>();
+        for (String etag : splitETags(ifMatch)) {
+            if (etag.equals("*")) {
+                return null;
+            }
+            Integer version = versionFromETag(id, etag);
+            if (version != null) {
+                versions.add(version);
+            }
+        }
+        if (versions.isEmpty()) {
+            throw new IllegalArgumentException("If-Match does not name a version of note " + id + ": " + ifMatch);
+        }
+        return versions;
+    }
+
+    /**
+     * Entries of a comma-separated ETag list; commas inside a quoted tag (a sparse fieldset) do not split it
+     */
+    private static List<String> splitETags(String header) {
+        List<String> etags = new ArrayList<>();
+        int start = 0;
+        boolean quoted = false;
+        for (int i = 0; i <= header.length(); i++) {
+            if (i == header.length() || (header.charAt(i) == ',' && !quoted)) {
+                String etag = header.substring(start, i).trim();
+                if (!etag.isEmpty()) {
+                    etags.add(etag);
+                }
+                start = i + 1;
+            } else if (header.charAt(i) == '"') {
+                quoted = !quoted;
+            }
+        }
+        return etags;
+    }
+
+    /**
+     * Version named by an If-Match value produced by noteETag, or null if it is not one for this note
+     */
+    public static Integer versionFromETag(Long id, String etag) {
+        String value = etag.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        value = value.replace("\"", "");
+        int fieldsStart = value.indexOf('+');
+        if (fieldsStart >= 0) {
+            value = value.substring(0, fieldsStart);
+        }
+        String prefix = id + "-";
+        if (!value.startsWith(prefix)) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String listingETag(List<NoteVersion> versions, Long nextCursor, Set<String> fields) {
+        StringBuilder content = new StringBuilder();
+        for (NoteVersion version : versions) {
+            content.append(version.getId()).append(':').append(version.getVersion()).append(',');
+        }
+        content.append("next:").append(nextCursor);
+        if (fields != null) {
+            content.append(";fields:").append(String.join(",", fields));
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            return "\"p-" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Full-text search over note titles and bodies, best match first.
+     * The cursor is "rank:id" of the last hit of the previous page.
+     */
+    public NoteSearchPage searchNotes(String query, String cursor, Integer size) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query must not be empty");
+        }
+        int pageSize = resolvePageSize(size);
+
+        float afterRank = Float.POSITIVE_INFINITY;
+        long afterId = Long.MAX_VALUE;
+        if (cursor != null) {
+            int separator = cursor.lastIndexOf(':');
+            try {
+                afterRank = Float.parseFloat(cursor.substring(0, separator));
+                afterId = Long.parseLong(cursor.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid search cursor: " + cursor);
+            }
+        }
+
+        List<NoteSearchHit> hits = notesRepository.search(query, afterRank, afterId, pageSize + 1);
+        String nextCursor = null;
+        if (hits.size() > pageSize) {
+            hits = hits.subList(0, pageSize);
+            NoteSearchHit last = hits.get(pageSize - 1);
+            nextCursor = last.getRank() + ":" + last.getId();
+        }
+        hits = hits.stream()
+                .map(hit -> hit.getBodyRef() != null || hit.getBodyHash() != null ? withStoredSnippet(hit, query) : hit)
+                .collect(Collectors.toList());
+        return new NoteSearchPage(hits, nextCursor);
+    }
+
+    /**
+     * The search query only highlights inline bodies: the snippet of a body stored outside the notes
+     * table is computed from the text it is indexed by
+     */
+    private NoteSearchHit withStoredSnippet(NoteSearchHit hit, String query) {
+        try {
+            String text = storedSearchText(hit.getBodyRef(), hit.getBodyHash());
+            return new NoteSearchHit.WithSnippet(hit, notesRepository.headline(text, query));
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Failed to read body of note {} for a search snippet: {}", hit.getId(), e.getMessage());
+            return hit;
+        }
+    }
+
+    /**
+     * Text a body stored outside the notes table is indexed by (see storeBody): the indexed part of
+     * an offloaded body, or a compressed body
+     */
+    private String storedSearchText(String bodyRef, String bodyHash) throws IOException {
+        if (bodyRef != null) {
+            return noteBlobStore.readSearchText(bodyRef);
+        }
+        return noteBlobStore.searchText(noteBodyStore.load(bodyHash));
+    }
+
+    /**
+     * Title typeahead served from the embedded search index,
+     * falling back to a database prefix query while the index is unavailable.
+     */
+    public List<NoteTitle> typeahead(String prefix, Integer limit) {
+        int maxResults = resolveLookupLimit(limit);
+
+        if (notesSearchIndex.isAvailable()) {
+            try {
+                return notesSearchIndex.typeahead(prefix, maxResults);
+            } catch (IOException e) {
+                logger.warn("Search index lookup failed, falling back to database: {}", e.getMessage());
+            }
+        }
+        return notesRepository.findByTitleStartingWithIgnoreCaseOrderByTitleAsc(prefix, PageRequest.of(0, maxResults));
+    }
+
+    /**
+     * Fuzzy "did you mean" lookup of titles by trigram similarity, using the pg_trgm index.
+     */
+    @Transactional(readOnly = true)
+    public List<NoteTitleMatch> lookupByTitle(String title, Float threshold, Integer limit) {
+        if (title == null || title.isBlank()) {
+            throw new IllegalArgumentException("Title must not be empty");
+        }
+        float minSimilarity = threshold == null ? DEFAULT_SIMILARITY_THRESHOLD : threshold;
+        if (minSimilarity <= 0 || minSimilarity > 1) {
+            throw new IllegalArgumentException("Threshold must be greater than 0 and at most 1");
+        }
+        int maxResults = resolveLookupLimit(limit);
+
+        notesRepository.setSimilarityThreshold(Float.toString(minSimilarity));
+        return notesRepository.findSimilarTitles(title, maxResults);
+    }
+
+    /**
+     * Rebuild the search index in the background; false if a rebuild is already running
+     */
+    public boolean rebuildSearchIndex() {
+        return notesSearchIndex.startRebuild();
+    }
+
+    private int resolveLookupLimit(Integer limit) {
+        int maxResults = limit == null ? DEFAULT_LOOKUP_LIMIT : limit;
+        if (maxResults < 1 || maxResults > MAX_LOOKUP_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LOOKUP_LIMIT);
+        }
+        return maxResults;
+    }
+
+    private int resolvePageSize(Integer size) {
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : size;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return pageSize;
+    }
+
+    /**
+     * Write every note to the stream as newline-delimited JSON, in id order.
+     * Rows are read through a database cursor and detached once written,
+     * so memory use stays constant regardless of the table size.
+     * Bodies in the blob store are written inline, so the export can be imported elsewhere.
+     */
+    @Transactional(readOnly = true)
+    public long exportNotes(OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(Notes.class);
+        long count = 0;
+        try (Stream<Notes> notes = notesRepository.streamAllOrderById()) {
+            Iterator<Notes> iterator = notes.iterator();
+            List<Notes> chunk = new ArrayList<>(EXPORT_FETCH_SIZE);
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == EXPORT_FETCH_SIZE || !iterator.hasNext()) {
+                    // compressed bodies are fetched once per chunk, not per row
+                    noteBodyStore.loadBodies(chunk);
+                    for (Notes note : chunk) {
+                        if (note.getBodyRef() != null) {
+                            writeWithBlobBody(out, note);
+                        } else {
+                            out.write(writer.writeValueAsBytes(note));
+                        }
+                        out.write('\n');
+                        entityManager.detach(note);
+                    }
+                    count += chunk.size();
+                    chunk.clear();
+                    out.flush();
+                }
+            }
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Write a note with its blob body as the "note" field, streamed from the blob file so it is
+     * never held in memory. The reference is left out: it only means something to this blob store.
+     */
+    private void writeWithBlobBody(OutputStream out, Notes note) throws IOException {
+        JsonNode json = objectMapper.valueToTree(note);
+        try (Reader body = Files.newBufferedReader(noteBlobStore.path(note.getBodyRef()), StandardCharsets.UTF_8);
+                JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            for (Iterator<Map.Entry<String, JsonNode>> fields = json.fields(); fields.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (field.getKey().equals("bodyRef") || field.getKey().equals("bodySize")) {
+                    continue;
+                }
+                generator.writeFieldName(field.getKey());
+                if (field.getKey().equals("note")) {
+                    generator.writeString(body, -1);
+                } else {
+                    generator.writeTree(field.getValue());
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Create or update many notes in one transaction.
+     * Notes without an id are inserted, notes with an id update the stored note if the version matches.
+     * The persistence context is flushed and cleared every batchSize items, so Hibernate sends
+     * the writes as JDBC batches and memory stays bounded. Returns one result per item, in order.
+     */
+    @Transactional
+    public List<BulkNoteResult> saveNotes(List<Notes> notes) {
+        if (notes == null || notes.isEmpty()) {
+            throw new IllegalArgumentException("No notes supplied");
+        }
+        if (notes.size() > MAX_BULK_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_SIZE + " notes can be saved per request");
+        }
+
+        List<BulkNoteResult> results = new ArrayList<>(notes.size());
+        List<Notes> saved = new ArrayList<>(notes.size());
+        for (int start = 0; start < notes.size(); start += batchSize) {
+            List<Notes> chunk = notes.subList(start, Math.min(start + batchSize, notes.size()));
+            NoteRevisionStore.Batch revisions = noteRevisionStore.batch();
+            Map<Long, String> searchTexts = new HashMap<>();
+            saveChunk(chunk, start, results, saved, revisions, searchTexts);
+            entityManager.flush();
+            updateBodyVectors(searchTexts);
+            // recorded once the new versions have been assigned by the flush
+            revisions.record();
+            entityManager.clear();
+        }
+        saved.forEach(n -> notesResponseCache.invalidate(n.getId(), n.getVersion()));
+        return results;
+    }
+
+    /**
+     * Apply one chunk of a bulk request, loading the notes to update with a single query.
+     * Collects the search texts of the written bodies (see storeBody) by note id.
+     */
+    private void saveChunk(List<Notes> chunk, int offset, List<BulkNoteResult> results, List<Notes> saved,
+                           NoteRevisionStore.Batch revisions, Map<Long, String> searchTexts) {
+        List<Long> ids = chunk.stream()
+                .filter(n -> n != null && n.getId() != null)
+                .map(Notes::getId)
+                .collect(Collectors.toList());
+        Map<Long, Notes> existing = new HashMap<>();
+        notesRepository.findAllById(ids).forEach(n -> existing.put(n.getId(), n));
+
+        for (int i = 0; i < chunk.size(); i++) {
+            int index = offset + i;
+            Notes note = chunk.get(i);
+            if (note == null) {
+                results.add(new BulkNoteResult(index, null, BulkNoteResult.Status.INVALID, "Empty item"));
+                continue;
+            }
+            String searchText;
+            try {
+                searchText = storeBody(note);
+            } catch (IllegalArgumentException e) {
+                results.add(new BulkNoteResult(index, note.getId(), BulkNoteResult.Status.INVALID, e.getMessage()));
+                continue;
+            }
+            if (note.getId() == null) {
+                entityManager.persist(note);
+                saved.add(note);
+                revisions.created(note.getId());
+                if (searchText != null) {
+                    searchTexts.put(note.getId(), searchText);
+                }
+                results.add(new BulkNoteResult(index, note.getId(), BulkNoteResult.Status.CREATED, null));
+            } else {
+                Notes current = existing.get(note.getId());
+                if (current == null) {
+                    results.add(new BulkNoteResult(index, note.getId(), BulkNoteResult.Status.NOT_FOUND,
+                            "Note not found"));
+                } else if (current.getVersion() != note.getVersion()) {
+                    results.add(new BulkNoteResult(index, note.getId(), BulkNoteResult.Status.CONFLICT,
+                            "Version mismatch: current version is " + current.getVersion()));
+                } else {
+                    NoteRevisionStore.Body previous = NoteRevisionStore.Body.of(current);
+                    current.setTitle(note.getTitle());
+                    current.setNote(note.getNote());
+                    current.setBodyRef(note.getBodyRef());
+                    current.setBodySize(note.getBodySize());
+                    current.setBodyHash(note.getBodyHash());
+                    saved.add(current);
+                    searchTexts.put(current.getId(), searchText);
+                    revisions.replaced(current.getId(), previous, NoteRevisionStore.Body.of(current));
+                    results.add(new BulkNoteResult(index, note.getId(), BulkNoteResult.Status.UPDATED, null));
+                }
+            }
+        }
+    }
+
+    /**
+     * Decide where a note's body is stored before it is written: a body larger than the inline
+     * limit moves to the blob store, leaving its reference on the note; other non-empty bodies
+     * are compressed into note_bodies when that mode is enabled, and kept inline otherwise.
+     * A note without a body may keep a blob reference it was read with (round-tripping GET into PUT),
+     * as long as the referenced body exists; it is touched like a freshly stored one, so the sweep
+     * cannot remove it before the note referring to it commits.
+     * Returns the text to index an offloaded or compressed body by for full-text search, to be written
+     * with updateBodyVectors once the note is; null when the body is indexed from the note column.
+     * It is taken from the plain text before it is stored, as search_vector cannot read it afterwards.
+     */
+    private String storeBody(Notes note) {
+        note.setBodyHash(null);
+        if (note.getNote() != null) {
+            byte[] body = note.getNote().getBytes(StandardCharsets.UTF_8);
+            if (body.length > noteBlobStore.getInlineMaxBytes()) {
+                String searchText = noteBlobStore.searchText(note.getNote());
+                note.setBodyRef(noteBlobStore.put(body));
+                note.setBodySize((long) body.length);
+                note.setNote(null);
+                return searchText;
+            } else {
+                note.setBodyRef(null);
+                note.setBodySize(null);
+                if (noteBodyStore.isEnabled() && body.length > 0) {
+                    String searchText = noteBlobStore.searchText(note.getNote());
+                    note.setBodyHash(noteBodyStore.store(body));
+                    note.setNote(null);
+                    return searchText;
+                }
+            }
+        } else if (note.getBodyRef() != null) {
+            if (!noteBlobStore.touch(note.getBodyRef())) {
+                throw new IllegalArgumentException("Unknown body reference: " + note.getBodyRef());
+            }
+            try {
+                note.setBodySize(noteBlobStore.size(note.getBodyRef()));
+                return noteBlobStore.readSearchText(note.getBodyRef());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            note.setBodySize(null);
+        }
+        return null;
+    }
+
+    /**
+     * Index for full-text search up to "limit" offloaded or compressed bodies written before body_vector
+     * existed, and return how many there were. A body that cannot be read is indexed as empty.
+     */
+    @Transactional
+    public int indexBodiesWithoutVector(int limit) {
+        List<NoteBody> bodies = notesRepository.findBodiesWithoutVector(limit);
+        Map<Long, String> searchTexts = new HashMap<>();
+        for (NoteBody body : bodies) {
+            try {
+                searchTexts.put(body.getId(), storedSearchText(body.getBodyRef(), body.getBodyHash()));
+            } catch (IOException | IllegalStateException e) {
+                logger.warn("Failed to read body of note {} for search: {}", body.getId(), e.getMessage());
+                searchTexts.put(body.getId(), "");
+            }
+        }
+        updateBodyVectors(searchTexts);
+        return bodies.size();
+    }
+
+    /**
+     * Write the full-text vectors of the given bodies (note id -> search text from storeBody)
+     */
+    private void updateBodyVectors(Map<Long, String> searchTexts) {
+        if (searchTexts.isEmpty()) {
+            return;
+        }
+        Long[] ids = new Long[searchTexts.size()];
+        String[] texts = new String[searchTexts.size()];
+        int i = 0;
+        for (Map.Entry<Long, String> entry : searchTexts.entrySet()) {
+            ids[i] = entry.getKey();
+            texts[i++] = entry.getValue();
+        }
+        notesRepository.updateBodyVectors(ids, texts);
+    }
+
+    @Transactional
     public void addNote(Notes note) {
-        notesRepository.save(note);
+        Optional<NoteBody> previous = note.getId() != null ? notesRepository.findBodyById(note.getId()) : Optional.empty();
+        String searchText = storeBody(note);
+        Notes saved = notesRepository.save(note);
+        entityManager.flush();
+        if (searchText != null || previous.isPresent()) {
+            notesRepository.updateBodyVectors(new Long[] {saved.getId()}, new String[] {searchText});
+        }
+        if (previous.isPresent()) {
+            noteRevisionStore.recordReplaced(saved.getId(),
+                    NoteRevisionStore.Body.of(previous.get()), NoteRevisionStore.Body.of(saved));
+        } else {
+            noteRevisionStore.recordCreated(saved.getId());
+        }
+        notesResponseCache.invalidate(saved.getId(), saved.getVersion());
     }
 
+    /**
+     * Delete a note; see deleteNotes
+     */
+    @Transactional
     public void deleteNote(Long id) {
-        notesRepository.deleteById(id);
+        deleteNotes(List.of(id));
+    }
+
+    /**
+     * Soft-delete notes with a single UPDATE that also leaves tombstones for the change feed.
+     * Deleted notes disappear from all reads immediately; NotesPurger removes the rows off-peak.
+     * Returns the ids that were deleted, leaving out ids that did not exist.
+     */
+    @Transactional
+    public List<Long> deleteNotes(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("At least one id is required");
+        }
+        // not ids.contains(null): immutable lists (deleteNote) throw on null queries
+        if (ids.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Ids must not be null");
+        }
+        if (ids.size() > MAX_BULK_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_SIZE + " notes can be deleted per request");
+        }
+
+        List<Long> deleted = notesRepository.softDeleteByIdAny(ids.toArray(new Long[0]),
+                new Timestamp(System.currentTimeMillis()));
+        for (Long id : deleted) {
+            notesResponseCache.invalidate(id, Integer.MAX_VALUE);
+        }
+        return deleted;
+    }
+
+    /**
+     * Apply a JSON Merge Patch (RFC 7396) to a note with a single conditional statement:
+     * UPDATE ... SET [patched columns], version = version + 1 WHERE id = ? AND version = ?
+     * The expected version comes from the If-Match ETag, or else from a "version" member of the patch.
+     * Returns the new version.
+     */
+    @Transactional
+    public int patchNote(Long id, String ifMatch, JsonNode patch) {
+        if (patch == null || !patch.isObject()) {
+            throw new IllegalArgumentException("Merge patch must be a JSON object");
+        }
+        int expectedVersion = expectedVersion(id, ifMatch, patch);
+
+        Map<String, Object> changes = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            switch (field.getKey()) {
+                case "title", "note" -> {
+                    if (!value.isNull() && !value.isTextual()) {
+                        throw new IllegalArgumentException("Field must be a string or null: " + field.getKey());
+                    }
+                    changes.put(field.getKey(), value.isNull() ? null : value.asText());
+                }
+                case "version" -> {
+                    // precondition only, see expectedVersion()
+                }
+                default -> throw new IllegalArgumentException("Field cannot be patched: " + field.getKey());
+            }
+        }
+
+        NoteRevisionStore.Body previous = null;
+        NoteRevisionStore.Body current = null;
+        String searchText = null;
+        if (changes.containsKey("note")) {
+            previous = notesRepository.findBodyById(id)
+                    .map(NoteRevisionStore.Body::of)
+                    .orElseThrow(() -> new NoteNotFoundException(id));
+            Notes body = new Notes(null, (String) changes.get("note"));
+            searchText = storeBody(body);
+            current = NoteRevisionStore.Body.of(body);
+            changes.put("note", body.getNote());
+            changes.put("bodyRef", body.getBodyRef());
+            changes.put("bodySize", body.getBodySize());
+            changes.put("bodyHash", body.getBodyHash());
+        }
+
+        if (changes.isEmpty()) {
+            int currentVersion = notesRepository.findVersionById(id)
+                    .orElseThrow(() -> new NoteNotFoundException(id));
+            if (currentVersion != expectedVersion) {
+                throw new NoteVersionConflictException(id, expectedVersion);
+            }
+            return currentVersion;
+        }
+
+        int newVersion = updateIfVersion(id, expectedVersion, changes);
+        if (previous != null) {
+            notesRepository.updateBodyVectors(new Long[] {id}, new String[] {searchText});
+            noteRevisionStore.recordReplaced(id, previous, current);
+        } else {
+            noteRevisionStore.recordEdited(id, List.of());
+        }
+        return newVersion;
+    }
+
+    /**
+     * Apply a delta to a note body: splices against the body of the expected version, so an edit
+     * to a large note sends only the changed text. Offloaded bodies are streamed from the old blob
+     * into a new one with the edits applied and never held in memory; smaller bodies are edited in
+     * memory. The result is stored like any other body (see storeBody), with the same conditional
+     * UPDATE as patchNote. Returns the new version.
+     */
+    @Transactional
+    public int patchNoteBody(Long id, String ifMatch, NoteBodyPatch patch) throws IOException {
+        if (patch == null || patch.getEdits() == null || patch.getEdits().isEmpty()) {
+            throw new IllegalArgumentException("At least one edit is required");
+        }
+        if (patch.getEdits().size() > MAX_BULK_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_SIZE + " edits per request");
+        }
+        int expectedVersion = expectedVersion(id, ifMatch, patch.getVersion());
+        List<NoteBodyEdit> edits = patch.getEdits();
+        NoteBodyEdits.validate(edits);
+
+        NoteBody current = notesRepository.findBodyById(id)
+                .orElseThrow(() -> new NoteNotFoundException(id));
+        if (current.getVersion() != expectedVersion) {
+            throw new NoteVersionConflictException(id, expectedVersion);
+        }
+
+        Notes body = new Notes(null, null);
+        if (current.getBodyRef() != null) {
+            try (Reader source = Files.newBufferedReader(noteBlobStore.path(current.getBodyRef()), StandardCharsets.UTF_8)) {
+                body.setBodyRef(noteBlobStore.put(out -> {
+                    Writer target = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                    NoteBodyEdits.apply(source, target, edits);
+                    target.flush();
+                }));
+            }
+            if (noteBlobStore.size(body.getBodyRef()) <= noteBlobStore.getInlineMaxBytes()) {
+                // shrunk enough to be kept inline again
+                body.setNote(Files.readString(noteBlobStore.path(body.getBodyRef()), StandardCharsets.UTF_8));
+                body.setBodyRef(null);
+            }
+        } else {
+            String text = current.getBodyHash() != null ? noteBodyStore.load(current.getBodyHash()) : current.getNote();
+            body.setNote(NoteBodyEdits.apply(text, edits));
+        }
+        String searchText = storeBody(body);
+
+        Map<String, Object> changes = new LinkedHashMap<>();
+        changes.put("note", body.getNote());
+        changes.put("bodyRef", body.getBodyRef());
+        changes.put("bodySize", body.getBodySize());
+        changes.put("bodyHash", body.getBodyHash());
+        int newVersion = updateIfVersion(id, expectedVersion, changes);
+        notesRepository.updateBodyVectors(new Long[] {id}, new String[] {searchText});
+        noteRevisionStore.recordEdited(id, edits);
+        return newVersion;
+    }
+
+    /**
+     * UPDATE ... SET [changes], version = version + 1 WHERE id = ? AND version = ?
+     * Throws if the note is gone or has moved on; returns the new version.
+     */
+    private int updateIfVersion(Long id, int expectedVersion, Map<String, Object> changes) {
+        // Column names come from the callers' whitelists
+        StringBuilder jpql = new StringBuilder("UPDATE Notes n SET n.version = n.version + 1, n.updatedAt = :updatedAt");
+        changes.keySet().forEach(field -> jpql.append(", n.").append(field).append(" = :").append(field));
+        jpql.append(" WHERE n.id = :id AND n.version = :version AND n.deletedAt IS NULL");
+
+        Query update = entityManager.createQuery(jpql.toString())
+                .setParameter("updatedAt", new Timestamp(System.currentTimeMillis()))
+                .setParameter("id", id)
+                .setParameter("version", expectedVersion);
+        changes.forEach(update::setParameter);
+
+        if (update.executeUpdate() == 0) {
+            if (notesRepository.findVersionById(id).isEmpty()) {
+                throw new NoteNotFoundException(id);
+            }
+            throw new NoteVersionConflictException(id, expectedVersion);
+        }
+
+        int newVersion = expectedVersion + 1;
+        notesResponseCache.invalidate(id, newVersion);
+        return newVersion;
+    }
+
+    private int expectedVersion(Long id, String ifMatch, JsonNode patch) {
+        JsonNode version = patch.get("version");
+        return expectedVersion(id, ifMatch, version != null && version.canConvertToInt() ? version.intValue() : null);
+    }
+
+    private int expectedVersion(Long id, String ifMatch, Integer version) {
+        if (ifMatch != null) {
+            Set<Integer> versions = versionsFromIfMatch(id, ifMatch);
+            if (versions != null && versions.size() == 1) {
+                return versions.iterator().next();
+            }
+            // "*" or a list: the precondition holds if the current version is one of them, and the
+            // conditional UPDATE on that version still fails if the note moves on meanwhile
+            int currentVersion = notesRepository.findVersionById(id)
+                    .orElseThrow(() -> new NoteNotFoundException(id));
+            if (versions != null && !versions.contains(currentVersion)) {
+                throw new NoteVersionConflictException(id, versions);
+            }
+            return currentVersion;
+        }
+        if (version == null) {
+            throw new IllegalArgumentException("An If-Match header or a \"version\" member is required");
+        }
+        return version;
+    }
+
+    /**
+     * Revision history of a note, newest first: versions below "before" (all versions if null)
+     */
+    public List<NoteRevisionSummary> getRevisions(Long id, Integer before, Integer size) {
+        int pageSize = resolvePageSize(size);
+        if (notesRepository.findVersionById(id).isEmpty()) {
+            throw new NoteNotFoundException(id);
+        }
+        return noteRevisionStore.getRevisions(id, before == null ? Integer.MAX_VALUE : before, pageSize);
+    }
+
+    /**
+     * A version of a note, reconstructed from its revision history; empty if that version was not recorded
+     */
+    public Optional<NoteRevision> getRevision(Long id, int version) {
+        if (notesRepository.findVersionById(id).isEmpty()) {
+            throw new NoteNotFoundException(id);
+        }
+        return noteRevisionStore.getRevision(id, version);
     }
 
     public Optional<Notes> getNotes(Long id) {
-        return notesRepository.findById(id);
+        Optional<Notes> note = notesRepository.findById(id);
+        note.ifPresent(n -> noteBodyStore.loadBodies(List.of(n)));
+        return note;
+    }
+
+    /**
+     * Where the body of a note is stored; empty if the note does not exist
+     */
+    public Optional<NoteBody> getNoteBody(Long id) {
+        return notesRepository.findBodyById(id);
+    }
+
+    /**
+     * Text of a body kept compressed in note_bodies
+     */
+    public String getStoredBody(String bodyHash) {
+        return noteBodyStore.load(bodyHash);
+    }
+
+    /**
+     * File of an offloaded body, for zero-copy reads
+     */
+    public Path getBodyPath(String bodyRef) {
+        return noteBlobStore.path(bodyRef);
+    }
+
+    /**
+     * Multi-get: the requested notes in request order (duplicates collapsed), fetched with one query,
+     * plus the ids that were not found.
+     * Unless the fieldset includes "note", bodies are not read (they stay null).
+     */
+    public NotesByIds getNotesByIds(List<Long> ids, Set<String> fields) {
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("At least one id is required");
+        }
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        if (requested.contains(null)) {
+            throw new IllegalArgumentException("Ids must not be null");
+        }
+        if (requested.size() > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_PAGE_SIZE + " ids per request");
+        }
+
+        Map<Long, Notes> found = new HashMap<>();
+        if (fields == null || fields.contains("note")) {
+            for (Notes note : notesRepository.findAllByIdAny(requested.toArray(new Long[0]))) {
+                found.put(note.getId(), note);
+            }
+            noteBodyStore.loadBodies(found.values());
+        } else {
+            for (NoteSummary summary : notesRepository.findSummariesByIdIn(requested)) {
+                found.put(summary.getId(), fromSummary(summary));
+            }
+        }
+        List<Notes> notes = new ArrayList<>(found.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : requested) {
+            Notes note = found.get(id);
+            if (note != null) {
+                notes.add(note);
+            } else {
+                missing.add(id);
+            }
+        }
+        return new NotesByIds(notes, missing);
+    }
+
+    /**
+     * Serialized JSON of a note, served from the off-heap response cache when possible.
+     * Returns null if the note does not exist.
+     */
+    public NoteJson getNoteJson(Long id) throws IOException {
+        NoteJson cached = notesResponseCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        Optional<Notes> note = notesRepository.findById(id);
+        if (note.isEmpty()) {
+            return null;
+        }
+        noteBodyStore.loadBodies(List.of(note.get()));
+        byte[] json = objectMapper.writeValueAsBytes(note.get());
+        notesResponseCache.put(id, note.get().getVersion(), json);
+        return new NoteJson(id, note.get().getVersion(), json);
+    }
+
+    /**
+     * Serialized JSON of a note limited to the given fields; the body is only read if requested.
+     * Sparse representations bypass the response cache. Returns null if the note does not exist.
+     */
+    public NoteJson getNoteJson(Long id, Set<String> fields) throws IOException {
+        if (fields == null) {
+            return getNoteJson(id);
+        }
+
+        Optional<Notes> note = fields.contains("note")
+                ? notesRepository.findById(id)
+                : notesRepository.findSummaryById(id).map(NotesService::fromSummary);
+        if (note.isEmpty()) {
+            return null;
+        }
+        noteBodyStore.loadBodies(List.of(note.get()));
+        byte[] json = objectMapper.writer(fieldsFilter(fields)).writeValueAsBytes(note.get());
+        return new NoteJson(id, note.get().getVersion(), json);
     }
 
-}
\ No newline at end of file
+}
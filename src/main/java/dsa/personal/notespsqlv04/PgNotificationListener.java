@@ -0,0 +1,133 @@
+package dsa.personal.notespsqlv04;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Single PostgreSQL LISTEN connection shared by everything that reacts to NOTIFY.
+ * Holds one pooled connection for the lifetime of the application and dispatches
+ * notifications on its own thread, so handlers must only hand the payload off.
+ * After a lost connection it reconnects and calls onReconnect, since notifications
+ * sent in between are gone.
+ */
+@Component
+public class PgNotificationListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PgNotificationListener.class);
+
+    private static final int POLL_TIMEOUT_MILLIS = 5000;
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+    public interface NotificationHandler {
+
+        void onNotification(String payload);
+
+        default void onReconnect() {
+        }
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final Map<String, List<NotificationHandler>> handlers = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+    private Thread thread;
+
+    @PostConstruct
+    public void start() {
+        thread = new Thread(this::listen, "pg-notification-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Register a handler; channels added after startup are picked up on the next poll.
+     */
+    public void subscribe(String channel, NotificationHandler handler) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid channel name: " + channel);
+        }
+        handlers.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(handler);
+    }
+
+    private void listen() {
+        boolean connectedBefore = false;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                Set<String> listening = new HashSet<>();
+                if (connectedBefore) {
+                    logger.info("Reconnected notification listener");
+                    handlers.values().forEach(list -> list.forEach(NotificationHandler::onReconnect));
+                }
+                connectedBefore = true;
+
+                while (running) {
+                    for (String channel : handlers.keySet()) {
+                        if (listening.add(channel)) {
+                            try (Statement statement = connection.createStatement()) {
+                                statement.execute("LISTEN " + channel);
+                            }
+                        }
+                    }
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("Notification listener connection failed, retrying in {} ms", RECONNECT_DELAY_MILLIS, e);
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(PGNotification notification) {
+        List<NotificationHandler> channelHandlers = handlers.get(notification.getName());
+        if (channelHandlers == null) {
+            return;
+        }
+        for (NotificationHandler handler : channelHandlers) {
+            try {
+                handler.onNotification(notification.getParameter());
+            } catch (RuntimeException e) {
+                logger.error("Notification handler failed for channel {}", notification.getName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package dsa.personal.notespsqlv04;
+
+import java.sql.Timestamp;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * A compressed note body, stored once per distinct content and referenced by notes.body_hash.
+ */
+@Entity
+@Table(name = "note_bodies")
+public class StoredNoteBody {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(nullable = false, length = 16)
+    private String codec;
+
+    @Column(name = "raw_size", nullable = false)
+    private int rawSize;
+
+    @Column(nullable = false)
+    private byte[] content;
+
+    @Column(name = "created_at", nullable = false)
+    private Timestamp createdAt;
+
+    public StoredNoteBody() {
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public int getRawSize() {
+        return rawSize;
+    }
+
+    public void setRawSize(int rawSize) {
+        this.rawSize = rawSize;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public void setContent(byte[] content) {
+        this.content = content;
+    }
+
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Timestamp createdAt) {
+        this.createdAt = createdAt;
+    }
+}
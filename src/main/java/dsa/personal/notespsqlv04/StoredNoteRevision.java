@@ -0,0 +1,157 @@
+package dsa.personal.notespsqlv04;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.Objects;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import org.hibernate.Length;
+
+/**
+ * One version of a note in its revision history. A snapshot holds the body the way notes do
+ * (inline, or a reference into the blob store or note_bodies); a delta holds only the edits,
+ * as JSON, that turn the previous version's body into this one.
+ */
+@Entity
+@Table(name = "note_revisions", indexes = {
+    @Index(name = "idx_note_revisions_body_ref", columnList = "body_ref"),
+    @Index(name = "idx_note_revisions_body_hash", columnList = "body_hash")
+})
+@IdClass(StoredNoteRevision.Key.class)
+public class StoredNoteRevision {
+
+    @Id
+    @Column(name = "note_id")
+    private Long noteId;
+
+    @Id
+    private int version;
+
+    private String title;
+
+    @Column(name = "created_at", nullable = false)
+    private Timestamp createdAt;
+
+    @Column(length = Length.LONG32)
+    private String edits;
+
+    @Column(length = Length.LONG32)
+    private String note;
+
+    @Column(name = "body_ref", length = 64)
+    private String bodyRef;
+
+    @Column(name = "body_hash", length = 64)
+    private String bodyHash;
+
+    @Column(name = "body_size")
+    private Long bodySize;
+
+    public static class Key implements Serializable {
+        private Long noteId;
+        private int version;
+
+        public Key() {
+        }
+
+        public Key(Long noteId, int version) {
+            this.noteId = noteId;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && Objects.equals(noteId, other.noteId) && version == other.version;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(noteId, version);
+        }
+    }
+
+    public StoredNoteRevision() {
+    }
+
+    public boolean isSnapshot() {
+        return edits == null;
+    }
+
+    public Long getNoteId() {
+        return noteId;
+    }
+
+    public void setNoteId(Long noteId) {
+        this.noteId = noteId;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Timestamp createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getEdits() {
+        return edits;
+    }
+
+    public void setEdits(String edits) {
+        this.edits = edits;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    public void setNote(String note) {
+        this.note = note;
+    }
+
+    public String getBodyRef() {
+        return bodyRef;
+    }
+
+    public void setBodyRef(String bodyRef) {
+        this.bodyRef = bodyRef;
+    }
+
+    public String getBodyHash() {
+        return bodyHash;
+    }
+
+    public void setBodyHash(String bodyHash) {
+        this.bodyHash = bodyHash;
+    }
+
+    public Long getBodySize() {
+        return bodySize;
+    }
+
+    public void setBodySize(Long bodySize) {
+        this.bodySize = bodySize;
+    }
+}
@@ -1,6 +1,5 @@
 package dsa.personal.notespsqlv04.controller;
 
-import dsa.personal.notespsqlv04.entity.Permission;
 import dsa.personal.notespsqlv04.entity.Role;
 import dsa.personal.notespsqlv04.entity.User;
 import dsa.personal.notespsqlv04.repository.PermissionRepository;
@@ -14,7 +13,6 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -76,29 +74,7 @@ public class RoleManagementController {
                 return "redirect:/admin/roles/create";
             }
 
-            Role newRole = new Role();
-            newRole.setName(name);
-            newRole.setDescription(description);
-
-            // Add permissions
-            if (permissionIds != null && !permissionIds.isEmpty()) {
-                Set<Permission> permissions = new HashSet<>();
-                for (Long permId : permissionIds) {
-                    permissionRepository.findById(permId).ifPresent(permissions::add);
-                }
-                newRole.setPermissions(permissions);
-            }
-
-            // Add inherited roles
-            if (inheritedRoleIds != null && !inheritedRoleIds.isEmpty()) {
-                Set<Role> inheritedRoles = new HashSet<>();
-                for (Long roleId : inheritedRoleIds) {
-                    roleRepository.findById(roleId).ifPresent(inheritedRoles::add);
-                }
-                newRole.setChildRoles(inheritedRoles);
-            }
-
-            roleRepository.save(newRole);
+            permissionService.createRole(name, description, permissionIds, inheritedRoleIds);
             redirectAttributes.addFlashAttribute("success", "Role created successfully: " + name);
 
         } catch (Exception e) {
@@ -135,30 +111,7 @@ public class RoleManagementController {
             RedirectAttributes redirectAttributes) {
 
         try {
-            Role role = roleRepository.findById(id)
-                    .orElseThrow(() -> new IllegalArgumentException("Role not found: " + id));
-
-            role.setDescription(description);
-
-            // Update permissions
-            role.getPermissions().clear();
-            if (permissionIds != null && !permissionIds.isEmpty()) {
-                for (Long permId : permissionIds) {
-                    permissionRepository.findById(permId).ifPresent(role.getPermissions()::add);
-                }
-            }
-
-            // Update inherited roles
-            role.getChildRoles().clear();
-            if (inheritedRoleIds != null && !inheritedRoleIds.isEmpty()) {
-                for (Long roleId : inheritedRoleIds) {
-                    if (!roleId.equals(id)) {  // Prevent self-reference
-                        roleRepository.findById(roleId).ifPresent(role.getChildRoles()::add);
-                    }
-                }
-            }
-
-            roleRepository.save(role);
+            permissionService.updateRole(id, description, permissionIds, inheritedRoleIds);
             redirectAttributes.addFlashAttribute("success", "Role updated successfully");
 
         } catch (Exception e) {
@@ -174,15 +127,7 @@ public class RoleManagementController {
     @PostMapping("/{id}/delete")
     public String deleteRole(@PathVariable Long id, RedirectAttributes redirectAttributes) {
         try {
-            Role role = roleRepository.findById(id)
-                    .orElseThrow(() -> new IllegalArgumentException("Role not found: " + id));
-
-            if (role.getIsSystem()) {
-                redirectAttributes.addFlashAttribute("error", "Cannot delete system role: " + role.getName());
-                return "redirect:/admin/roles";
-            }
-
-            roleRepository.delete(role);
+            permissionService.deleteRole(id);
             redirectAttributes.addFlashAttribute("success", "Role deleted successfully");
 
         } catch (Exception e) {
@@ -207,8 +152,7 @@ public class RoleManagementController {
             Role role = roleRepository.findById(roleId)
                     .orElseThrow(() -> new IllegalArgumentException("Role not found"));
 
-            user.getRoles().add(role);
-            userRepository.save(user);
+            permissionService.assignRoleToUser(user.getUsername(), role.getName());
 
             redirectAttributes.addFlashAttribute("success",
                     "Assigned role " + role.getName() + " to user " + user.getUsername());
@@ -235,8 +179,7 @@ public class RoleManagementController {
             Role role = roleRepository.findById(roleId)
                     .orElseThrow(() -> new IllegalArgumentException("Role not found"));
 
-            user.getRoles().remove(role);
-            userRepository.save(user);
+            permissionService.removeRoleFromUser(user.getUsername(), role.getName());
 
             redirectAttributes.addFlashAttribute("success",
                     "Removed role " + role.getName() + " from user " + user.getUsername());
@@ -16,7 +16,8 @@ import java.sql.Timestamp;
 public class PermissionAudit {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "permission_audit_seq")
+    @SequenceGenerator(name = "permission_audit_seq", sequenceName = "permission_audit_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "user_id")
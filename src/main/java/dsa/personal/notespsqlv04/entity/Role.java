@@ -14,7 +14,8 @@ import java.util.Objects;
 public class Role {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "roles_seq")
+    @SequenceGenerator(name = "roles_seq", sequenceName = "roles_seq", allocationSize = 50)
     private Long id;
 
     @Column(unique = true, nullable = false, length = 100)
@@ -27,7 +28,7 @@ public class Role {
     private Boolean isSystem = false;  // Prevent deletion of system roles
 
     // Direct permissions assigned to this role
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
         name = "role_permissions",
         joinColumns = @JoinColumn(name = "role_id"),
@@ -36,7 +37,7 @@ public class Role {
     private Set<Permission> permissions = new HashSet<>();
 
     // Role composition: roles that this role inherits from
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
         name = "role_hierarchy",
         joinColumns = @JoinColumn(name = "parent_role_id"),
@@ -61,7 +62,8 @@ public class Role {
 
     /**
      * Get all permissions including inherited permissions from child roles.
-     * This recursively collects permissions from the entire role hierarchy.
+     * This recursively collects permissions from the entire role hierarchy; permission checks
+     * read the flattened role_effective_permissions table instead.
      */
     public Set<Permission> getAllPermissions() {
         Set<Permission> allPermissions = new HashSet<>(permissions);
@@ -3,6 +3,7 @@ package dsa.personal.notespsqlv04.repository;
 import dsa.personal.notespsqlv04.entity.Permission;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -43,6 +44,19 @@ public interface PermissionRepository extends JpaRepository<Permission, Long> {
     @Query("SELECT DISTINCT p.resource FROM Permission p ORDER BY p.resource")
     List<String> findAllDistinctResources();
 
+    /**
+     * Find a user's effective permissions (direct and inherited, through all of their roles)
+     * with a single indexed query on the role_effective_permissions closure
+     */
+    @Query(value = """
+            SELECT DISTINCT p.* FROM users u
+            JOIN user_roles ur ON ur.user_id = u.id
+            JOIN role_effective_permissions rep ON rep.role_id = ur.role_id
+            JOIN permissions p ON p.id = rep.permission_id
+            WHERE u.username = :username
+            """, nativeQuery = true)
+    Set<Permission> findEffectiveByUsername(@Param("username") String username);
+
     /**
      * Find all distinct actions
      */
@@ -2,7 +2,9 @@ package dsa.personal.notespsqlv04.repository;
 
 import dsa.personal.notespsqlv04.entity.Role;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -37,4 +39,70 @@ public interface RoleRepository extends JpaRepository<Role, Long> {
      * Check if role name exists
      */
     boolean existsByName(String name);
+
+    /**
+     * Serialize role_effective_permissions maintenance until the end of the transaction, so concurrent
+     * rebuilds (e.g. nodes starting together) never insert the same rows twice
+     */
+    @Query(value = "SELECT 1 FROM pg_advisory_xact_lock(hashtext('role_effective_permissions'))", nativeQuery = true)
+    int lockEffectivePermissions();
+
+    /**
+     * Remove the role_effective_permissions rows of a role and of every role inheriting from it
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            WITH RECURSIVE ancestors (role_id) AS (
+                SELECT CAST(:roleId AS bigint)
+                UNION
+                SELECT h.parent_role_id FROM ancestors JOIN role_hierarchy h ON h.child_role_id = ancestors.role_id
+            )
+            DELETE FROM role_effective_permissions WHERE role_id IN (SELECT role_id FROM ancestors)
+            """, nativeQuery = true)
+    int deleteEffectivePermissions(@Param("roleId") Long roleId);
+
+    /**
+     * Recompute the role_effective_permissions rows of a role and of every role inheriting from it
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            INSERT INTO role_effective_permissions (role_id, permission_id)
+            WITH RECURSIVE ancestors (role_id) AS (
+                SELECT CAST(:roleId AS bigint)
+                UNION
+                SELECT h.parent_role_id FROM ancestors JOIN role_hierarchy h ON h.child_role_id = ancestors.role_id
+            ), reach (role_id, descendant_id) AS (
+                SELECT role_id, role_id FROM ancestors
+                UNION
+                SELECT reach.role_id, h.child_role_id
+                FROM reach JOIN role_hierarchy h ON h.parent_role_id = reach.descendant_id
+            )
+            SELECT DISTINCT reach.role_id, rp.permission_id
+            FROM reach JOIN role_permissions rp ON rp.role_id = reach.descendant_id
+            """, nativeQuery = true)
+    int insertEffectivePermissions(@Param("roleId") Long roleId);
+
+    /**
+     * Clear role_effective_permissions, before a full rebuild
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "DELETE FROM role_effective_permissions", nativeQuery = true)
+    int deleteAllEffectivePermissions();
+
+    /**
+     * Compute role_effective_permissions for every role
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            INSERT INTO role_effective_permissions (role_id, permission_id)
+            WITH RECURSIVE reach (role_id, descendant_id) AS (
+                SELECT id, id FROM roles
+                UNION
+                SELECT reach.role_id, h.child_role_id
+                FROM reach JOIN role_hierarchy h ON h.parent_role_id = reach.descendant_id
+            )
+            SELECT DISTINCT reach.role_id, rp.permission_id
+            FROM reach JOIN role_permissions rp ON rp.role_id = reach.descendant_id
+            """, nativeQuery = true)
+    int insertAllEffectivePermissions();
 }
@@ -3,8 +3,10 @@ package dsa.personal.notespsqlv04.repository;
 import dsa.personal.notespsqlv04.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -35,4 +37,20 @@ public interface UserRepository extends JpaRepository<User, Long> {
      */
     @Query("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.roles WHERE u.username = :username")
     Optional<User> findByUsernameWithRoles(String username);
+
+    /**
+     * Find the users whose permissions depend on a role: those holding it directly or through
+     * any role that inherits from it (the role -> user reverse index, via idx_user_roles_role)
+     */
+    @Query(value = """
+            WITH RECURSIVE ancestors (role_id) AS (
+                SELECT CAST(:roleId AS bigint)
+                UNION
+                SELECT h.parent_role_id FROM ancestors JOIN role_hierarchy h ON h.child_role_id = ancestors.role_id
+            )
+            SELECT DISTINCT u.username FROM ancestors
+            JOIN user_roles ur ON ur.role_id = ancestors.role_id
+            JOIN users u ON u.id = ur.user_id
+            """, nativeQuery = true)
+    List<String> findUsernamesDependingOnRole(@Param("roleId") Long roleId);
 }
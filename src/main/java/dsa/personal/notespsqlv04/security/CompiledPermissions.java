@@ -0,0 +1,104 @@
+package dsa.personal.notespsqlv04.security;
+
+import dsa.personal.notespsqlv04.entity.Permission;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A user's effective permissions compiled into bitsets over PermissionRegistry ids.
+ * Wildcards are resolved at compile time: "*:*" is a flag, "RESOURCE:*" a bit in a resource set,
+ * and "*:ACTION" is folded into every resource's action row (and kept as the row for resources
+ * without one), so a check is at most two array lookups and never compares strings.
+ * Immutable, and only a few longs per user.
+ */
+public final class CompiledPermissions {
+
+    private static final long[] NONE = new long[0];
+
+    private final PermissionRegistry registry;
+    private final boolean all;
+    private final long[] resourcesWithAllActions;
+    private final long[] actionsOnAnyResource;
+    private final long[][] actionsByResource;
+    private final int size;
+
+    private CompiledPermissions(PermissionRegistry registry, boolean all, long[] resourcesWithAllActions,
+                                long[] actionsOnAnyResource, long[][] actionsByResource, int size) {
+        this.registry = registry;
+        this.all = all;
+        this.resourcesWithAllActions = resourcesWithAllActions;
+        this.actionsOnAnyResource = actionsOnAnyResource;
+        this.actionsByResource = actionsByResource;
+        this.size = size;
+    }
+
+    public static CompiledPermissions compile(Collection<Permission> permissions, PermissionRegistry registry) {
+        boolean all = false;
+        BitSet resourcesWithAllActions = new BitSet();
+        BitSet actionsOnAnyResource = new BitSet();
+        Map<Integer, BitSet> rows = new HashMap<>();
+        int maxResource = -1;
+
+        for (Permission permission : permissions) {
+            boolean anyResource = PermissionRegistry.WILDCARD.equals(permission.getResource());
+            boolean anyAction = PermissionRegistry.WILDCARD.equals(permission.getAction());
+            if (anyResource && anyAction) {
+                all = true;
+            } else if (anyResource) {
+                actionsOnAnyResource.set(registry.internAction(permission.getAction()));
+            } else if (anyAction) {
+                resourcesWithAllActions.set(registry.internResource(permission.getResource()));
+            } else {
+                int resource = registry.internResource(permission.getResource());
+                rows.computeIfAbsent(resource, r -> new BitSet()).set(registry.internAction(permission.getAction()));
+                maxResource = Math.max(maxResource, resource);
+            }
+        }
+
+        long[][] actionsByResource = new long[maxResource + 1][];
+        for (Map.Entry<Integer, BitSet> row : rows.entrySet()) {
+            row.getValue().or(actionsOnAnyResource);
+            actionsByResource[row.getKey()] = row.getValue().toLongArray();
+        }
+        return new CompiledPermissions(registry, all, resourcesWithAllActions.toLongArray(),
+                actionsOnAnyResource.toLongArray(), actionsByResource, permissions.size());
+    }
+
+    public static CompiledPermissions empty(PermissionRegistry registry) {
+        return new CompiledPermissions(registry, false, NONE, NONE, new long[0][], 0);
+    }
+
+    /**
+     * Same semantics as Permission.matches, over all of the user's permissions
+     */
+    public boolean matches(String resource, String action) {
+        if (all) {
+            return true;
+        }
+        int resourceId = registry.resourceId(resource);
+        if (resourceId >= 0 && test(resourcesWithAllActions, resourceId)) {
+            return true;
+        }
+        int actionId = registry.actionId(action);
+        if (actionId < 0) {
+            return false;
+        }
+        long[] row = resourceId >= 0 && resourceId < actionsByResource.length ? actionsByResource[resourceId] : null;
+        return test(row != null ? row : actionsOnAnyResource, actionId);
+    }
+
+    /**
+     * Number of permissions this was compiled from
+     */
+    public int size() {
+        return size;
+    }
+
+    private static boolean test(long[] bits, int index) {
+        int word = index >>> 6;
+        return word < bits.length && (bits[word] & (1L << index)) != 0;
+    }
+}
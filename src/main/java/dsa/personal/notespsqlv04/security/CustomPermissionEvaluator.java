@@ -1,6 +1,5 @@
 package dsa.personal.notespsqlv04.security;
 
-import dsa.personal.notespsqlv04.entity.Permission;
 import dsa.personal.notespsqlv04.service.AuditService;
 import dsa.personal.notespsqlv04.service.PermissionService;
 import org.slf4j.Logger;
@@ -11,7 +10,6 @@ import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
 import java.io.Serializable;
-import java.util.Set;
 
 /**
  * Custom PermissionEvaluator for dynamic permission checking.
@@ -85,12 +83,8 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
         logger.debug("Checking permission for user: {} on resource: {} action: {}",
                 username, resource, action);
 
-        // Get all user permissions
-        Set<Permission> userPermissions = permissionService.getUserPermissions(username);
-
-        // Check if user has matching permission
-        boolean granted = userPermissions.stream()
-                .anyMatch(p -> p.matches(resource, action));
+        // Check against the user's compiled (cached) permissions
+        boolean granted = permissionService.getCompiledPermissions(username).matches(resource, action);
 
         // Audit the permission check
         if (resourceId != null) {
@@ -3,6 +3,7 @@ package dsa.personal.notespsqlv04.security;
 import dsa.personal.notespsqlv04.entity.Permission;
 import dsa.personal.notespsqlv04.entity.Role;
 import dsa.personal.notespsqlv04.entity.User;
+import dsa.personal.notespsqlv04.repository.PermissionRepository;
 import dsa.personal.notespsqlv04.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +32,9 @@ public class CustomUserDetailsService implements UserDetailsService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private PermissionRepository permissionRepository;
+
     @Override
     @Transactional(readOnly = true)
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
@@ -67,11 +71,11 @@ public class CustomUserDetailsService implements UserDetailsService {
         // Add role-based authorities (ROLE_ prefix for Spring Security)
         for (Role role : user.getRoles()) {
             authorities.add(new SimpleGrantedAuthority("ROLE_" + role.getName()));
+        }
 
-            // Add all permissions from the role (including inherited)
-            for (Permission permission : role.getAllPermissions()) {
-                authorities.add(new SimpleGrantedAuthority(permission.getName()));
-            }
+        // Add all permissions from the roles (including inherited), from the closure table
+        for (Permission permission : permissionRepository.findEffectiveByUsername(user.getUsername())) {
+            authorities.add(new SimpleGrantedAuthority(permission.getName()));
         }
 
         return authorities;
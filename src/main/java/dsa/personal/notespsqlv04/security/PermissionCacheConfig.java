@@ -0,0 +1,22 @@
+package dsa.personal.notespsqlv04.security;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import dsa.personal.notespsqlv04.service.PermissionService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * Caffeine backing for the userPermissions cache, configured by spring.cache.caffeine.spec.
+ * The loader below is what refreshAfterWrite uses: an entry past its refresh age keeps being
+ * served while a single background load replaces it, so active users never wait on the database;
+ * entries not read again expire. Misses are loaded once per user by @Cacheable(sync = true).
+ */
+@Configuration
+public class PermissionCacheConfig {
+
+    @Bean
+    public CacheLoader<Object, Object> userPermissionsLoader(@Lazy PermissionService permissionService) {
+        return username -> permissionService.compilePermissions((String) username);
+    }
+}
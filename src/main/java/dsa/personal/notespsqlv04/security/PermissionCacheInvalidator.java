@@ -0,0 +1,144 @@
+package dsa.personal.notespsqlv04.security;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dsa.personal.notespsqlv04.PgNotificationListener;
+import dsa.personal.notespsqlv04.service.PermissionService;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cluster-wide invalidation of the userPermissions cache over PostgreSQL LISTEN/NOTIFY.
+ * Evictions are applied locally once the change commits and broadcast on the permission_changes
+ * channel with pg_notify in the same transaction, so other nodes only hear about committed changes.
+ * Every node (this one included) evicts what it receives; after the listener reconnects the whole
+ * cache is cleared, since notifications sent while it was down are lost.
+ */
+@Component
+public class PermissionCacheInvalidator implements PgNotificationListener.NotificationHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PermissionCacheInvalidator.class);
+
+    public static final String CHANNEL = "permission_changes";
+
+    // NOTIFY payloads must stay under 8000 bytes; longer user lists are sent as "evict all"
+    private static final int MAX_PAYLOAD_LENGTH = 7500;
+
+    @Autowired
+    private PgNotificationListener notificationListener;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @PostConstruct
+    public void init() {
+        notificationListener.subscribe(CHANNEL, this);
+    }
+
+    /**
+     * Evict the cached permissions of these users on every node
+     */
+    public void evictUsers(Collection<String> usernames) {
+        if (usernames.isEmpty()) {
+            return;
+        }
+        List<String> users = new ArrayList<>(usernames);
+        String payload = toJson(Map.of("users", users));
+        if (payload.length() > MAX_PAYLOAD_LENGTH) {
+            evictAll();
+            return;
+        }
+        afterCommit(() -> users.forEach(cache()::evict));
+        notifyNodes(payload);
+    }
+
+    /**
+     * Clear the permission cache on every node
+     */
+    public void evictAll() {
+        afterCommit(() -> cache().clear());
+        notifyNodes(toJson(Map.of("all", true)));
+    }
+
+    @Override
+    public void onNotification(String payload) {
+        try {
+            JsonNode json = objectMapper.readTree(payload);
+            if (json.path("all").asBoolean()) {
+                cache().clear();
+                logger.debug("Cleared permission cache on notification");
+                return;
+            }
+            JsonNode users = json.path("users");
+            users.forEach(user -> cache().evict(user.asText()));
+            logger.debug("Evicted cached permissions of {} users on notification", users.size());
+        } catch (JsonProcessingException e) {
+            logger.warn("Ignoring malformed permission notification: {}", payload, e);
+        }
+    }
+
+    /**
+     * Evictions sent while the listener was down are lost; start from an empty cache
+     */
+    @Override
+    public void onReconnect() {
+        cache().clear();
+    }
+
+    /**
+     * pg_notify is transactional: inside a transaction it is delivered on commit, and never on rollback.
+     * Its void result is cast to text, which Hibernate can map.
+     */
+    private void notifyNodes(String payload) {
+        entityManager.createNativeQuery("SELECT CAST(pg_notify(:channel, :payload) AS text)")
+                .setParameter("channel", CHANNEL)
+                .setParameter("payload", payload)
+                .getSingleResult();
+    }
+
+    private Cache cache() {
+        return cacheManager.getCache(PermissionService.USER_PERMISSIONS_CACHE);
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize permission notification", e);
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
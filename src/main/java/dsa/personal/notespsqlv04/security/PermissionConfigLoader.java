@@ -10,6 +10,7 @@ import dsa.personal.notespsqlv04.entity.Permission;
 import dsa.personal.notespsqlv04.entity.Role;
 import dsa.personal.notespsqlv04.repository.PermissionRepository;
 import dsa.personal.notespsqlv04.repository.RoleRepository;
+import dsa.personal.notespsqlv04.service.PermissionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,6 +43,9 @@ public class PermissionConfigLoader implements ApplicationRunner {
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private PermissionService permissionService;
+
     @Value("${security.permissions.config-path:classpath:config/permissions.yml}")
     private Resource permissionsConfig;
 
@@ -61,6 +65,10 @@ public class PermissionConfigLoader implements ApplicationRunner {
             logger.warn("Failed to load configurations from YAML files: {}. Using defaults.", e.getMessage());
             // Continue startup - bootstrap data will create minimal setup
         }
+
+        // in the same transaction as the roles it covers, and even if loading failed, so the closure
+        // never stays stale across restarts
+        permissionService.rebuildEffectivePermissions();
     }
 
     /**
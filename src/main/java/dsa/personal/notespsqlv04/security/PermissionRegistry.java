@@ -0,0 +1,49 @@
+package dsa.personal.notespsqlv04.security;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Global dictionaries interning permission resources and actions to small integer ids,
+ * shared by every user's CompiledPermissions.
+ * Ids are only assigned when permissions are compiled; lookups for names never granted to
+ * anyone (e.g. arbitrary hasPermission target types) return -1 and do not grow the dictionaries.
+ * The wildcard "*" is never interned, it is compiled into the decision tables instead.
+ */
+@Component
+public class PermissionRegistry {
+
+    public static final String WILDCARD = "*";
+
+    private final Map<String, Integer> resources = new ConcurrentHashMap<>();
+    private final Map<String, Integer> actions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextResource = new AtomicInteger();
+    private final AtomicInteger nextAction = new AtomicInteger();
+
+    int internResource(String resource) {
+        return resources.computeIfAbsent(resource, r -> nextResource.getAndIncrement());
+    }
+
+    int internAction(String action) {
+        return actions.computeIfAbsent(action, a -> nextAction.getAndIncrement());
+    }
+
+    /**
+     * Id of a resource, or -1 if no compiled permission names it
+     */
+    int resourceId(String resource) {
+        Integer id = resource != null ? resources.get(resource) : null;
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Id of an action, or -1 if no compiled permission names it
+     */
+    int actionId(String action) {
+        Integer id = action != null ? actions.get(action) : null;
+        return id != null ? id : -1;
+    }
+}
@@ -6,16 +6,19 @@ import dsa.personal.notespsqlv04.entity.User;
 import dsa.personal.notespsqlv04.repository.PermissionRepository;
 import dsa.personal.notespsqlv04.repository.RoleRepository;
 import dsa.personal.notespsqlv04.repository.UserRepository;
+import dsa.personal.notespsqlv04.security.CompiledPermissions;
+import dsa.personal.notespsqlv04.security.PermissionCacheInvalidator;
+import dsa.personal.notespsqlv04.security.PermissionRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -27,6 +30,8 @@ public class PermissionService {
 
     private static final Logger logger = LoggerFactory.getLogger(PermissionService.class);
 
+    public static final String USER_PERMISSIONS_CACHE = "userPermissions";
+
     @Autowired
     private UserRepository userRepository;
 
@@ -36,21 +41,39 @@ public class PermissionService {
     @Autowired
     private PermissionRepository permissionRepository;
 
+    @Autowired
+    private PermissionRegistry permissionRegistry;
+
+    @Autowired
+    private PermissionCacheInvalidator permissionCacheInvalidator;
+
     /**
-     * Get all permissions for a user (cached for performance)
+     * Get a user's permissions compiled for fast checks (cached for performance).
+     * The cache holds only the compiled bitsets, not the permission entities.
+     * Concurrent misses for the same user share a single load (sync).
      */
-    @Cacheable(value = "userPermissions", key = "#username")
-    public Set<Permission> getUserPermissions(String username) {
-        logger.debug("Loading permissions for user: {}", username);
+    @Cacheable(value = "userPermissions", key = "#username", sync = true)
+    public CompiledPermissions getCompiledPermissions(String username) {
+        return compilePermissions(username);
+    }
 
-        User user = userRepository.findByUsernameWithRoles(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+    /**
+     * Load and compile a user's permissions, bypassing the cache (used to refresh it)
+     */
+    public CompiledPermissions compilePermissions(String username) {
+        return CompiledPermissions.compile(getUserPermissions(username), permissionRegistry);
+    }
 
-        Set<Permission> permissions = new HashSet<>();
+    /**
+     * Get all permissions for a user, including inherited ones, in one query on the
+     * role_effective_permissions closure
+     */
+    public Set<Permission> getUserPermissions(String username) {
+        logger.debug("Loading permissions for user: {}", username);
 
-        // Get permissions from all user roles (including inherited)
-        for (Role role : user.getRoles()) {
-            permissions.addAll(role.getAllPermissions());
+        Set<Permission> permissions = permissionRepository.findEffectiveByUsername(username);
+        if (permissions.isEmpty() && !userRepository.existsByUsername(username)) {
+            throw new UsernameNotFoundException("User not found: " + username);
         }
 
         logger.debug("User {} has {} permissions", username, permissions.size());
@@ -61,17 +84,13 @@ public class PermissionService {
      * Check if user has a specific permission
      */
     public boolean hasPermission(String username, String resource, String action) {
-        Set<Permission> userPermissions = getUserPermissions(username);
-
-        return userPermissions.stream()
-                .anyMatch(p -> p.matches(resource, action));
+        return getCompiledPermissions(username).matches(resource, action);
     }
 
     /**
      * Create a new composite role
      */
     @Transactional
-    @CacheEvict(value = "userPermissions", allEntries = true)
     public Role createCompositeRole(String name, String description,
                                    Set<String> inheritedRoleNames,
                                    Set<String> additionalPermissionNames) {
@@ -104,6 +123,7 @@ public class PermissionService {
         }
 
         Role savedRole = roleRepository.save(newRole);
+        roleChanged(savedRole.getId());
         logger.info("Created composite role: {} with {} direct permissions and {} inherited roles",
                 name, newRole.getPermissions().size(), newRole.getChildRoles().size());
 
@@ -114,7 +134,6 @@ public class PermissionService {
      * Add permission to role
      */
     @Transactional
-    @CacheEvict(value = "userPermissions", allEntries = true)
     public void addPermissionToRole(Long roleId, Long permissionId) {
         Role role = roleRepository.findById(roleId)
                 .orElseThrow(() -> new IllegalArgumentException("Role not found: " + roleId));
@@ -124,6 +143,7 @@ public class PermissionService {
 
         role.getPermissions().add(permission);
         roleRepository.save(role);
+        roleChanged(roleId);
 
         logger.info("Added permission {} to role {}", permission.getName(), role.getName());
     }
@@ -132,7 +152,6 @@ public class PermissionService {
      * Remove permission from role
      */
     @Transactional
-    @CacheEvict(value = "userPermissions", allEntries = true)
     public void removePermissionFromRole(Long roleId, Long permissionId) {
         Role role = roleRepository.findById(roleId)
                 .orElseThrow(() -> new IllegalArgumentException("Role not found: " + roleId));
@@ -142,6 +161,7 @@ public class PermissionService {
 
         role.getPermissions().remove(permission);
         roleRepository.save(role);
+        roleChanged(roleId);
 
         logger.info("Removed permission {} from role {}", permission.getName(), role.getName());
     }
@@ -150,7 +170,6 @@ public class PermissionService {
      * Add inherited role to a parent role
      */
     @Transactional
-    @CacheEvict(value = "userPermissions", allEntries = true)
     public void addInheritedRole(Long parentRoleId, Long childRoleId) {
         Role parentRole = roleRepository.findById(parentRoleId)
                 .orElseThrow(() -> new IllegalArgumentException("Parent role not found: " + parentRoleId));
@@ -165,10 +184,118 @@ public class PermissionService {
 
         parentRole.getChildRoles().add(childRole);
         roleRepository.save(parentRole);
+        roleChanged(parentRoleId);
 
         logger.info("Added inherited role {} to {}", childRole.getName(), parentRole.getName());
     }
 
+    /**
+     * Create a role from permission and inherited role ids (unknown ids are skipped), and compute
+     * its effective permissions in the same transaction
+     */
+    @Transactional
+    public Role createRole(String name, String description, Set<Long> permissionIds, Set<Long> inheritedRoleIds) {
+        if (roleRepository.existsByName(name)) {
+            throw new IllegalArgumentException("Role already exists: " + name);
+        }
+
+        Role newRole = new Role();
+        newRole.setName(name);
+        newRole.setDescription(description);
+        if (permissionIds != null && !permissionIds.isEmpty()) {
+            newRole.getPermissions().addAll(permissionRepository.findAllById(permissionIds));
+        }
+        if (inheritedRoleIds != null && !inheritedRoleIds.isEmpty()) {
+            newRole.getChildRoles().addAll(roleRepository.findAllById(inheritedRoleIds));
+        }
+
+        Role savedRole = roleRepository.save(newRole);
+        roleChanged(savedRole.getId());
+        logger.info("Created role: {}", name);
+        return savedRole;
+    }
+
+    /**
+     * Replace a role's description, permissions and inherited roles (unknown ids and the role itself
+     * are skipped), and recompute the effective permissions depending on it in the same transaction
+     */
+    @Transactional
+    public Role updateRole(Long roleId, String description, Set<Long> permissionIds, Set<Long> inheritedRoleIds) {
+        Role role = roleRepository.findById(roleId)
+                .orElseThrow(() -> new IllegalArgumentException("Role not found: " + roleId));
+
+        role.setDescription(description);
+        role.getPermissions().clear();
+        if (permissionIds != null && !permissionIds.isEmpty()) {
+            role.getPermissions().addAll(permissionRepository.findAllById(permissionIds));
+        }
+        role.getChildRoles().clear();
+        if (inheritedRoleIds != null && !inheritedRoleIds.isEmpty()) {
+            for (Role child : roleRepository.findAllById(inheritedRoleIds)) {
+                if (!child.getId().equals(roleId)) {  // Prevent self-reference
+                    role.getChildRoles().add(child);
+                }
+            }
+        }
+
+        Role savedRole = roleRepository.save(role);
+        roleChanged(roleId);
+        logger.info("Updated role: {}", role.getName());
+        return savedRole;
+    }
+
+    /**
+     * Delete a non-system role and rebuild the effective permissions in the same transaction
+     */
+    @Transactional
+    public void deleteRole(Long roleId) {
+        Role role = roleRepository.findById(roleId)
+                .orElseThrow(() -> new IllegalArgumentException("Role not found: " + roleId));
+        if (Boolean.TRUE.equals(role.getIsSystem())) {
+            throw new IllegalArgumentException("Cannot delete system role: " + role.getName());
+        }
+
+        roleRepository.delete(role);
+        rebuildEffectivePermissions();
+        logger.info("Deleted role: {}", role.getName());
+    }
+
+    /**
+     * Recompute role_effective_permissions for a role whose permissions or inherited roles
+     * changed, and for every role inheriting from it; evicts only the affected users
+     */
+    @Transactional
+    public void refreshEffectivePermissions(Long roleId) {
+        roleChanged(roleId);
+    }
+
+    /**
+     * Recompute role_effective_permissions for all roles, e.g. after roles were deleted
+     */
+    @Transactional
+    public void rebuildEffectivePermissions() {
+        roleRepository.lockEffectivePermissions();
+        roleRepository.deleteAllEffectivePermissions();
+        int rows = roleRepository.insertAllEffectivePermissions();
+        permissionCacheInvalidator.evictAll();
+        logger.info("Rebuilt role effective permissions: {} rows", rows);
+    }
+
+    /**
+     * Recompute the closure for a changed role, and evict the cached permissions of only the users
+     * depending on it (see UserRepository.findUsernamesDependingOnRole) on every node once the change
+     * has committed
+     */
+    private void roleChanged(Long roleId) {
+        roleRepository.lockEffectivePermissions();
+        roleRepository.deleteEffectivePermissions(roleId);
+        roleRepository.insertEffectivePermissions(roleId);
+
+        List<String> usernames = userRepository.findUsernamesDependingOnRole(roleId);
+        permissionCacheInvalidator.evictUsers(usernames);
+        logger.debug("Evicting cached permissions of {} users of role {}", usernames.size(), roleId);
+    }
+
     /**
      * Check for circular dependency in role hierarchy
      */
@@ -190,7 +317,6 @@ public class PermissionService {
      * Assign role to user
      */
     @Transactional
-    @CacheEvict(value = "userPermissions", key = "#username")
     public void assignRoleToUser(String username, String roleName) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
@@ -200,6 +326,7 @@ public class PermissionService {
 
         user.getRoles().add(role);
         userRepository.save(user);
+        permissionCacheInvalidator.evictUsers(List.of(username));
 
         logger.info("Assigned role {} to user {}", roleName, username);
     }
@@ -208,7 +335,6 @@ public class PermissionService {
      * Remove role from user
      */
     @Transactional
-    @CacheEvict(value = "userPermissions", key = "#username")
     public void removeRoleFromUser(String username, String roleName) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
@@ -218,6 +344,7 @@ public class PermissionService {
 
         user.getRoles().remove(role);
         userRepository.save(user);
+        permissionCacheInvalidator.evictUsers(List.of(username));
 
         logger.info("Removed role {} from user {}", roleName, username);
     }
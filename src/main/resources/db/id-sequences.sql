@@ -0,0 +1,35 @@
+-- Migration path from IDENTITY columns to pooled id sequences.
+-- Tables created before the switch already hold ids that a freshly created sequence would hand out
+-- again, so each sequence is moved past the highest existing id. Ids from blocks already allocated
+-- by running nodes stay below the sequence's next value, so this only fires for ids written before
+-- the switch.
+-- Runs after Hibernate schema update (spring.jpa.defer-datasource-initialization) and before the
+-- web server starts; must stay idempotent. A failure here stops startup.
+
+DO '
+DECLARE
+    target record;
+    next_value bigint;
+    max_id bigint;
+BEGIN
+    FOR target IN
+        SELECT * FROM (VALUES
+            (''notes_seq'', ''notes''),
+            (''users_seq'', ''users''),
+            (''roles_seq'', ''roles''),
+            (''permissions_seq'', ''permissions''),
+            (''permission_audit_seq'', ''permission_audit'')
+        ) AS t (sequence_name, table_name)
+    LOOP
+        SELECT COALESCE(last_value + increment_by, start_value) INTO next_value
+        FROM pg_sequences
+        WHERE schemaname = current_schema() AND sequencename = target.sequence_name;
+
+        EXECUTE format(''SELECT COALESCE(MAX(id), 0) FROM %I'', target.table_name) INTO max_id;
+
+        IF next_value IS NOT NULL AND max_id >= next_value THEN
+            PERFORM setval(CAST(target.sequence_name AS regclass), max_id + 1, false);
+        END IF;
+    END LOOP;
+END;
+';
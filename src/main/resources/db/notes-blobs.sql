@@ -0,0 +1,8 @@
+-- The blob store directory this database refers to (see NoteBlobStore): one row, written by the
+-- first node to start, so nodes configured with different notes.blobs.path directories refuse to start.
+-- Runs after Hibernate schema update (spring.jpa.defer-datasource-initialization); must stay idempotent.
+
+CREATE TABLE IF NOT EXISTS note_blob_store (
+    singleton boolean PRIMARY KEY DEFAULT true CHECK (singleton),
+    store_id text NOT NULL
+);
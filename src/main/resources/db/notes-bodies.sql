@@ -0,0 +1,11 @@
+-- Compressed body storage: every notes.body_hash must name a row of note_bodies,
+-- so the purger can never delete a body that is still in use.
+-- Runs after Hibernate schema update (spring.jpa.defer-datasource-initialization); must stay idempotent.
+
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = ''fk_notes_body_hash'') THEN
+        ALTER TABLE notes ADD CONSTRAINT fk_notes_body_hash FOREIGN KEY (body_hash) REFERENCES note_bodies (hash);
+    END IF;
+END;
+';
@@ -0,0 +1,14 @@
+-- Note bodies: widen notes.note from the varchar(255) of older schemas to text.
+-- The generated search_vector column depends on note, so it is dropped first and re-created
+-- by notes-search.sql, which is listed after this script. Does nothing once note is text.
+
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = ''notes''
+                 AND column_name = ''note'' AND data_type = ''character varying'') THEN
+        ALTER TABLE notes DROP COLUMN IF EXISTS search_vector;
+        ALTER TABLE notes ALTER COLUMN note TYPE text;
+    END IF;
+END;
+';
@@ -0,0 +1,29 @@
+-- SSE change stream: publish every note write and delete on the notes_changes channel.
+-- The function body is single-quoted rather than $$-quoted so the default ';' script separator keeps working.
+-- Soft-deleted rows (deleted_at set) are announced by their tombstone insert, not by the notes update.
+-- Bulk imports set notes.notify_suppressed for their transaction and send one {"bulk":true} instead.
+-- Listeners only use these as wake-ups (and for cache invalidation): what changed is read back from the change feed.
+
+CREATE OR REPLACE FUNCTION notes_notify_change() RETURNS trigger AS '
+BEGIN
+    IF current_setting(''notes.notify_suppressed'', true) = ''on'' THEN
+        RETURN NULL;
+    END IF;
+    IF TG_TABLE_NAME = ''note_tombstones'' THEN
+        PERFORM pg_notify(''notes_changes'', json_build_object(
+            ''id'', NEW.note_id, ''deleted'', true)::text);
+    ELSIF NEW.deleted_at IS NULL THEN
+        PERFORM pg_notify(''notes_changes'', json_build_object(
+            ''id'', NEW.id, ''version'', NEW.version, ''deleted'', false)::text);
+    END IF;
+    RETURN NULL;
+END;
+' LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS notes_notify_change ON notes;
+CREATE TRIGGER notes_notify_change AFTER INSERT OR UPDATE ON notes
+    FOR EACH ROW EXECUTE FUNCTION notes_notify_change();
+
+DROP TRIGGER IF EXISTS note_tombstones_notify_change ON note_tombstones;
+CREATE TRIGGER note_tombstones_notify_change AFTER INSERT OR UPDATE ON note_tombstones
+    FOR EACH ROW EXECUTE FUNCTION notes_notify_change();
@@ -0,0 +1,11 @@
+-- Revision history: snapshots of compressed bodies reference note_bodies like notes do,
+-- so the purger can never delete a body a revision still needs.
+-- Runs after Hibernate schema update (spring.jpa.defer-datasource-initialization); must stay idempotent.
+
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = ''fk_note_revisions_body_hash'') THEN
+        ALTER TABLE note_revisions ADD CONSTRAINT fk_note_revisions_body_hash FOREIGN KEY (body_hash) REFERENCES note_bodies (hash);
+    END IF;
+END;
+';
@@ -0,0 +1,25 @@
+-- Full-text search over notes: generated tsvector column and GIN index.
+-- A body kept inline is indexed from note; a body stored elsewhere (note is null) is indexed from
+-- body_vector, which the application computes from the plain text whenever it writes the body.
+-- Runs after Hibernate schema update (spring.jpa.defer-datasource-initialization); must stay idempotent.
+
+ALTER TABLE notes ADD COLUMN IF NOT EXISTS body_vector tsvector;
+
+-- search_vector of older schemas is built from note alone: re-create it below
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_schema = current_schema() AND table_name = ''notes''
+                 AND column_name = ''search_vector'' AND generation_expression NOT LIKE ''%body_vector%'') THEN
+        ALTER TABLE notes DROP COLUMN search_vector;
+    END IF;
+END;
+';
+
+ALTER TABLE notes ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (
+        setweight(to_tsvector('english', coalesce(title, '')), 'A') ||
+        setweight(coalesce(body_vector, to_tsvector('english', coalesce(note, ''))), 'B')
+    ) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_notes_search_vector ON notes USING GIN (search_vector);
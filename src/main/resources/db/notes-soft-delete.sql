@@ -0,0 +1,4 @@
+-- Soft delete: partial index that lets the purger find deleted rows without scanning live ones.
+-- Runs after Hibernate schema update (spring.jpa.defer-datasource-initialization); must stay idempotent.
+
+CREATE INDEX IF NOT EXISTS idx_notes_deleted_at ON notes (deleted_at) WHERE deleted_at IS NOT NULL;
@@ -0,0 +1,17 @@
+-- Flattened role -> permission closure: every permission a role grants, directly or through
+-- any role it inherits (role_hierarchy), so a user's effective permissions are one indexed join.
+-- Maintained by PermissionService, in the transaction of each role change, and rebuilt on every
+-- startup by PermissionConfigLoader so it is populated on existing databases; only the schema is here.
+-- Runs after Hibernate schema update (spring.jpa.defer-datasource-initialization); must stay idempotent.
+
+CREATE TABLE IF NOT EXISTS role_effective_permissions (
+    role_id bigint NOT NULL REFERENCES roles (id) ON DELETE CASCADE,
+    permission_id bigint NOT NULL REFERENCES permissions (id) ON DELETE CASCADE,
+    PRIMARY KEY (role_id, permission_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_role_effective_permissions_permission
+    ON role_effective_permissions (permission_id);
+
+-- Reverse lookup role -> users, for evicting only the cached permissions a role change affects
+CREATE INDEX IF NOT EXISTS idx_user_roles_role ON user_roles (role_id);
@@ -0,0 +1,84 @@
+package dsa.personal.notespsqlv04;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class NoteBodyEditsTests {
+
+	// U+1D11E MUSICAL SYMBOL G CLEF, a surrogate pair at offsets 1 and 2
+	private static final String BODY = "a𝄞b";
+
+	@Test
+	void betweenRoundTrips() {
+		String[][] pairs = {
+				{"hello world", "hello brave world"},
+				{"hello brave world", "hello world"},
+				{"abc", "xyz"},
+				{"", "new body"},
+				{"old body", ""},
+				{"aaaa", "aaaaaa"},
+				{"x𝄞y", "x😀y"},
+				{"𝄞", "𝄞𝄞"},
+				{null, "body"},
+		};
+		for (String[] pair : pairs) {
+			List<NoteBodyEdit> edits = NoteBodyEdits.between(pair[0], pair[1]);
+			assertEquals(pair[1], NoteBodyEdits.apply(pair[0], edits), () -> pair[0] + " -> " + pair[1]);
+		}
+	}
+
+	@Test
+	void betweenNeverSplitsSurrogatePair() {
+		// U+1D11E and U+1D11F share their high surrogate, U+1D11E and U+1F11E their low one
+		NoteBodyEdit prefix = NoteBodyEdits.between("a\uD834\uDD1E", "a\uD834\uDD1F").get(0);
+		assertEquals(1L, prefix.getOffset());
+		assertEquals(2, prefix.getDelete());
+		assertEquals("\uD834\uDD1F", prefix.getInsert());
+
+		NoteBodyEdit suffix = NoteBodyEdits.between("\uD834\uDD1Eb", "\uD83C\uDD1Eb").get(0);
+		assertEquals(0L, suffix.getOffset());
+		assertEquals(2, suffix.getDelete());
+		assertEquals("\uD83C\uDD1E", suffix.getInsert());
+	}
+
+	@Test
+	void emptyEditsLeaveBodyUnchanged() {
+		assertTrue(NoteBodyEdits.between("same", "same").isEmpty());
+		assertTrue(NoteBodyEdits.between(null, "").isEmpty());
+		NoteBodyEdits.validate(List.of());
+		assertEquals("same", NoteBodyEdits.apply("same", List.of()));
+		assertEquals("same", NoteBodyEdits.apply("same", List.of(new NoteBodyEdit(2L, 0, null))));
+	}
+
+	@Test
+	void appliesEditsAroundSurrogatePairs() {
+		assertEquals("aXb", NoteBodyEdits.apply(BODY, List.of(new NoteBodyEdit(1L, 2, "X"))));
+		assertEquals("a𝄞𝄞b", NoteBodyEdits.apply(BODY, List.of(new NoteBodyEdit(3L, 0, "𝄞"))));
+	}
+
+	@Test
+	void rejectsOffsetInsideSurrogatePair() {
+		List<NoteBodyEdit> insert = List.of(new NoteBodyEdit(2L, 0, "X"));
+		assertThrows(IllegalArgumentException.class, () -> NoteBodyEdits.apply(BODY, insert));
+	}
+
+	@Test
+	void rejectsDeleteEndingInsideSurrogatePair() {
+		List<NoteBodyEdit> delete = List.of(new NoteBodyEdit(0L, 2, null));
+		assertThrows(IllegalArgumentException.class, () -> NoteBodyEdits.apply(BODY, delete));
+	}
+
+	@Test
+	void rejectsUnpairedSurrogateInInsert() {
+		assertThrows(IllegalArgumentException.class,
+				() -> NoteBodyEdits.validate(List.of(new NoteBodyEdit(0L, 0, "x\uD834"))));
+		assertThrows(IllegalArgumentException.class,
+				() -> NoteBodyEdits.validate(List.of(new NoteBodyEdit(0L, 0, "\uDD1Ex"))));
+		NoteBodyEdits.validate(List.of(new NoteBodyEdit(0L, 0, "𝄞")));
+	}
+}
@@ -0,0 +1,44 @@
+package dsa.personal.notespsqlv04;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class NoteChangeCursorTests {
+
+	@Test
+	void formatsAndParsesRoundTrip() {
+		NoteChangeCursor cursor = new NoteChangeCursor(9_000_000_123L, 42);
+		assertEquals("9000000123:42", cursor.toString());
+		assertEquals(cursor, NoteChangeCursor.parse(cursor.toString()));
+		assertEquals(NoteChangeCursor.START, NoteChangeCursor.parse("0:0"));
+	}
+
+	@Test
+	void ordersByTransactionThenNoteId() {
+		NoteChangeCursor first = new NoteChangeCursor(10, 500);
+		NoteChangeCursor second = new NoteChangeCursor(11, 1);
+		NoteChangeCursor third = new NoteChangeCursor(11, 2);
+		assertTrue(first.compareTo(second) < 0);
+		assertTrue(second.compareTo(third) < 0);
+		assertTrue(NoteChangeCursor.START.compareTo(first) < 0);
+		assertEquals(0, third.compareTo(NoteChangeCursor.parse("11:2")));
+	}
+
+	@Test
+	void rejectsMalformedCursors() {
+		for (String cursor : new String[] { "", "12", ":", "12:", ":3", "a:1", "1:b", "-1:2", "1:-2", "1:2:3" }) {
+			IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+					() -> NoteChangeCursor.parse(cursor), cursor);
+			assertEquals("Invalid changes cursor: " + cursor, e.getMessage());
+		}
+		assertThrows(IllegalArgumentException.class, () -> NoteChangeCursor.parse(null));
+	}
+
+	@Test
+	void rejectsTimestampCursorsOfTheOldFormat() {
+		assertThrows(IllegalArgumentException.class, () -> NoteChangeCursor.parse("1700000000000000-42"));
+	}
+}
@@ -0,0 +1,58 @@
+package dsa.personal.notespsqlv04;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Revision recording against the database, with the default snapshot interval of 20; each test rolls back
+ */
+@SpringBootTest
+@Transactional
+class NoteRevisionHistoryTests {
+
+	@Autowired
+	private NotesService notesService;
+
+	@Autowired
+	private NoteRevisionRepository noteRevisionRepository;
+
+	@Test
+	void snapshotsEveryIntervalAndReconstructsEveryVersion() throws Exception {
+		Notes note = new Notes("Revision cadence", "v0");
+		notesService.addNote(note);
+		Long id = note.getId();
+		for (int version = 0; version < 42; version++) {
+			String previous = "v" + version;
+			notesService.patchNoteBody(id, null, new NoteBodyPatch(version,
+					List.of(new NoteBodyEdit(1L, previous.length() - 1, Integer.toString(version + 1)))));
+		}
+
+		for (int version = 0; version <= 42; version++) {
+			StoredNoteRevision revision = noteRevisionRepository.findById(new StoredNoteRevision.Key(id, version))
+					.orElseThrow();
+			assertEquals(version % 20 == 0, revision.isSnapshot(), "snapshot at version " + version);
+			assertEquals("v" + version, notesService.getRevision(id, version).orElseThrow().getNote());
+		}
+	}
+
+	@Test
+	void snapshotsAfterGapInHistory() throws Exception {
+		Notes note = new Notes("Revision gap", "v0");
+		notesService.addNote(note);
+		Long id = note.getId();
+		notesService.patchNoteBody(id, null, new NoteBodyPatch(0, List.of(new NoteBodyEdit(1L, 1, "1"))));
+		noteRevisionRepository.deleteById(new StoredNoteRevision.Key(id, 1));
+		notesService.patchNoteBody(id, null, new NoteBodyPatch(1, List.of(new NoteBodyEdit(1L, 1, "2"))));
+
+		assertTrue(notesService.getRevision(id, 1).isEmpty());
+		assertTrue(noteRevisionRepository.findById(new StoredNoteRevision.Key(id, 2)).orElseThrow().isSnapshot());
+		assertEquals("v2", notesService.getRevision(id, 2).orElseThrow().getNote());
+	}
+}
@@ -0,0 +1,157 @@
+package dsa.personal.notespsqlv04;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@ExtendWith(MockitoExtension.class)
+class NoteRevisionStoreTests {
+
+	private static final String BODY = "The quick brown fox jumps over the lazy dog";
+
+	@Mock
+	private NoteRevisionRepository noteRevisionRepository;
+
+	@Mock
+	private NoteBlobStore noteBlobStore;
+
+	@Mock
+	private NoteBodyStore noteBodyStore;
+
+	@Spy
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	@InjectMocks
+	private NoteRevisionStore store;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(store, "snapshotInterval", 20);
+	}
+
+	@Test
+	void recordsBatchWithOneInsert() throws Exception {
+		NoteRevisionStore.Batch batch = store.batch();
+		batch.created(1L);
+		batch.replaced(2L, body(BODY), body(BODY.replace("lazy", "sleepy")));
+		batch.replaced(3L, body(BODY), body(BODY));
+		batch.replaced(4L, body(BODY), body("Something else entirely"));
+		batch.record();
+
+		ArgumentCaptor<Long[]> ids = ArgumentCaptor.forClass(Long[].class);
+		ArgumentCaptor<String[]> edits = ArgumentCaptor.forClass(String[].class);
+		verify(noteRevisionRepository).insertRevisions(ids.capture(), edits.capture(), eq(20));
+		assertArrayEquals(new Long[] {1L, 2L, 3L, 4L}, ids.getValue());
+		assertNull(edits.getValue()[0]);
+		List<NoteBodyEdit> delta = List.of(objectMapper.readValue(edits.getValue()[1], NoteBodyEdit[].class));
+		assertEquals(BODY.replace("lazy", "sleepy"), NoteBodyEdits.apply(BODY, delta));
+		assertEquals("[]", edits.getValue()[2]);
+		// mostly rewritten: a snapshot is no larger than the delta
+		assertNull(edits.getValue()[3]);
+	}
+
+	@Test
+	void recordsNoteListedTwiceAsSnapshot() {
+		NoteRevisionStore.Batch batch = store.batch();
+		batch.edited(1L, List.of(new NoteBodyEdit(0L, 1, "x")));
+		batch.edited(1L, List.of(new NoteBodyEdit(1L, 1, "y")));
+		batch.record();
+
+		ArgumentCaptor<String[]> edits = ArgumentCaptor.forClass(String[].class);
+		verify(noteRevisionRepository).insertRevisions(any(), edits.capture(), anyInt());
+		assertArrayEquals(new String[] {null}, edits.getValue());
+	}
+
+	@Test
+	void recordsOffloadedBodyChangeAsSnapshotWithoutReadingIt() {
+		Notes offloaded = new Notes("title", null);
+		offloaded.setBodyRef("a".repeat(64));
+		store.recordReplaced(1L, body(BODY), NoteRevisionStore.Body.of(offloaded));
+		store.recordReplaced(2L, NoteRevisionStore.Body.of(offloaded), body(BODY));
+
+		ArgumentCaptor<String[]> edits = ArgumentCaptor.forClass(String[].class);
+		verify(noteRevisionRepository, times(2)).insertRevisions(any(), edits.capture(), anyInt());
+		edits.getAllValues().forEach(value -> assertArrayEquals(new String[] {null}, value));
+		verifyNoInteractions(noteBlobStore);
+	}
+
+	@Test
+	void emptyBatchWritesNothing() {
+		store.batch().record();
+		verify(noteRevisionRepository, never()).insertRevisions(any(), any(), anyInt());
+	}
+
+	@Test
+	void reconstructsVersionFromSnapshotAndDeltas() throws Exception {
+		List<StoredNoteRevision> deltas = List.of(
+				delta(1, List.of(new NoteBodyEdit(4L, 5, "slow"))),
+				delta(2, List.of(new NoteBodyEdit(0L, 3, "A"))));
+		when(noteRevisionRepository.findSnapshot(1L, 2)).thenReturn(Optional.of(snapshot(0, BODY)));
+		when(noteRevisionRepository.findByNoteIdAndVersionBetweenOrderByVersionAsc(1L, 1, 2)).thenReturn(deltas);
+
+		Optional<NoteRevision> revision = store.getRevision(1L, 2);
+		assertTrue(revision.isPresent());
+		assertEquals("A slow brown fox jumps over the lazy dog", revision.get().getNote());
+		assertEquals(2, revision.get().getVersion());
+	}
+
+	@Test
+	void missingDeltaMakesVersionUnavailable() throws Exception {
+		List<StoredNoteRevision> deltas = List.of(
+				delta(1, List.of(new NoteBodyEdit(0L, 1, "t"))),
+				delta(3, List.of(new NoteBodyEdit(0L, 1, "T"))));
+		when(noteRevisionRepository.findSnapshot(1L, 3)).thenReturn(Optional.of(snapshot(0, BODY)));
+		when(noteRevisionRepository.findByNoteIdAndVersionBetweenOrderByVersionAsc(1L, 1, 3)).thenReturn(deltas);
+
+		assertTrue(store.getRevision(1L, 3).isEmpty());
+	}
+
+	private static NoteRevisionStore.Body body(String note) {
+		return NoteRevisionStore.Body.of(new Notes("title", note));
+	}
+
+	private static StoredNoteRevision snapshot(int version, String note) {
+		StoredNoteRevision revision = new StoredNoteRevision();
+		revision.setNoteId(1L);
+		revision.setVersion(version);
+		revision.setTitle("title");
+		revision.setNote(note);
+		revision.setCreatedAt(new Timestamp(0));
+		return revision;
+	}
+
+	private StoredNoteRevision delta(int version, List<NoteBodyEdit> edits) throws Exception {
+		StoredNoteRevision revision = new StoredNoteRevision();
+		revision.setNoteId(1L);
+		revision.setVersion(version);
+		revision.setTitle("title");
+		revision.setEdits(objectMapper.writeValueAsString(edits));
+		revision.setCreatedAt(new Timestamp(0));
+		return revision;
+	}
+}
@@ -0,0 +1,52 @@
+package dsa.personal.notespsqlv04;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class NotesServiceETagTests {
+
+	@Test
+	void parsesSingleETag() {
+		assertEquals(Set.of(2), NotesService.versionsFromIfMatch(3L, "\"3-2\""));
+		assertEquals(Set.of(2), NotesService.versionsFromIfMatch(3L, "W/\"3-2\""));
+		assertEquals(Set.of(2), NotesService.versionsFromIfMatch(3L, " 3-2 "));
+	}
+
+	@Test
+	void roundTripsNoteETags() {
+		Set<String> fields = new TreeSet<>(Set.of("id", "title", "version"));
+		assertEquals(Set.of(9), NotesService.versionsFromIfMatch(3L, NotesService.noteETag(3L, 9)));
+		assertEquals(Set.of(9), NotesService.versionsFromIfMatch(3L, NotesService.noteETag(3L, 9, fields)));
+	}
+
+	@Test
+	void parsesETagList() {
+		assertEquals(Set.of(1, 4), NotesService.versionsFromIfMatch(3L, "\"3-1\", W/\"3-4\""));
+		// commas inside a quoted sparse-fieldset tag do not split it
+		assertEquals(Set.of(2, 5), NotesService.versionsFromIfMatch(3L, "\"3-2+id,title\",\"3-5+note\""));
+	}
+
+	@Test
+	void ignoresEntriesForOtherNotes() {
+		assertEquals(Set.of(2), NotesService.versionsFromIfMatch(3L, "\"4-7\", \"33-1\", \"3-2\", \"junk\""));
+	}
+
+	@Test
+	void wildcardMatchesAnyVersion() {
+		assertNull(NotesService.versionsFromIfMatch(3L, "*"));
+		assertNull(NotesService.versionsFromIfMatch(3L, " * "));
+	}
+
+	@Test
+	void rejectsListWithoutThisNote() {
+		assertThrows(IllegalArgumentException.class, () -> NotesService.versionsFromIfMatch(3L, "\"4-7\", \"33-1\""));
+		assertThrows(IllegalArgumentException.class, () -> NotesService.versionsFromIfMatch(3L, "\"3-x\""));
+		assertThrows(IllegalArgumentException.class, () -> NotesService.versionsFromIfMatch(3L, " , "));
+	}
+}
@@ -0,0 +1,80 @@
+package dsa.personal.notespsqlv04.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dsa.personal.notespsqlv04.entity.Permission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class CompiledPermissionsTests {
+
+	private static final List<String> RESOURCES = List.of("NOTES", "USERS", "ROLES", PermissionRegistry.WILDCARD);
+	private static final List<String> ACTIONS = List.of("READ", "WRITE", "DELETE", PermissionRegistry.WILDCARD);
+
+	// checked names: granted ones, one interned only by other users, one never interned, the literal wildcard, null
+	private static final List<String> CHECKED_RESOURCES = Arrays.asList("NOTES", "USERS", "ROLES", "AUDIT", "UNKNOWN", "*", null);
+	private static final List<String> CHECKED_ACTIONS = Arrays.asList("READ", "WRITE", "DELETE", "EXPORT", "UNKNOWN", "*", null);
+
+	/**
+	 * Every subset of the 16 permissions over three resources, three actions and the wildcards
+	 * ("*:*", "RESOURCE:*", "*:ACTION" alone and folded into existing rows) gives the same decisions
+	 * as checking each Permission in turn, for granted, unknown and wildcard names alike
+	 */
+	@Test
+	void matchesLikePermissionsForEveryCombination() {
+		List<Permission> universe = new ArrayList<>();
+		for (String resource : RESOURCES) {
+			for (String action : ACTIONS) {
+				universe.add(new Permission(resource + ":" + action, resource, action, null));
+			}
+		}
+		PermissionRegistry registry = new PermissionRegistry();
+		// names compiled for other users, so ids exist that none of these permissions use
+		registry.internResource("AUDIT");
+		registry.internAction("EXPORT");
+
+		for (int subset = 0; subset < 1 << universe.size(); subset++) {
+			List<Permission> granted = new ArrayList<>();
+			for (int i = 0; i < universe.size(); i++) {
+				if ((subset & (1 << i)) != 0) {
+					granted.add(universe.get(i));
+				}
+			}
+			CompiledPermissions compiled = CompiledPermissions.compile(granted, registry);
+			assertEquals(granted.size(), compiled.size());
+			for (String resource : CHECKED_RESOURCES) {
+				for (String action : CHECKED_ACTIONS) {
+					boolean expected = granted.stream().anyMatch(p -> p.matches(resource, action));
+					assertEquals(expected, compiled.matches(resource, action),
+							() -> granted.stream().map(Permission::getName).toList() + " checking " + resource + ":" + action);
+				}
+			}
+		}
+	}
+
+	@Test
+	void foldsActionWildcardIntoExistingRows() {
+		PermissionRegistry registry = new PermissionRegistry();
+		CompiledPermissions compiled = CompiledPermissions.compile(List.of(
+				new Permission("NOTES:READ", "NOTES", "READ", null),
+				new Permission("*:DELETE", "*", "DELETE", null)), registry);
+		assertTrue(compiled.matches("NOTES", "READ"));
+		assertTrue(compiled.matches("NOTES", "DELETE"));
+		assertTrue(compiled.matches("USERS", "DELETE"));
+		assertFalse(compiled.matches("USERS", "READ"));
+	}
+
+	@Test
+	void emptyMatchesNothing() {
+		CompiledPermissions empty = CompiledPermissions.empty(new PermissionRegistry());
+		assertFalse(empty.matches("NOTES", "READ"));
+		assertFalse(empty.matches("*", "*"));
+		assertEquals(0, empty.size());
+	}
+}